@@ -0,0 +1,83 @@
+package searchengine.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Тексты страниц для бенчмарков. По умолчанию - страница из ресурсов,
+ * для замера на реальных страницах укажите каталог с текстами, например
+ * выгрузку столбца page.text по файлу на страницу: -p pages=/path/to/pages
+ */
+final class BenchmarkTexts {
+
+    private BenchmarkTexts() {
+    }
+
+    static List<String> load(String directory) {
+        try {
+            if (directory == null || directory.isBlank()) {
+                try (InputStream in = BenchmarkTexts.class.getResourceAsStream("/benchmark/page.txt")) {
+                    return List.of(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            try (Stream<Path> files = Files.list(Path.of(directory))) {
+                return files.filter(Files::isRegularFile).sorted().map(BenchmarkTexts::read).toList();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Повторяет тексты по кругу, пока их размер в UTF-8 не достигнет bytes;
+     * последний текст обрезается.
+     */
+    static List<String> repeatToSize(List<String> texts, int bytes) {
+        if (texts.stream().allMatch(String::isEmpty)) {
+            throw new IllegalArgumentException("Нет текстов для бенчмарка");
+        }
+        List<String> result = new ArrayList<>();
+        int remaining = bytes;
+        for (int i = 0; remaining > 0; i = (i + 1) % texts.size()) {
+            String text = texts.get(i);
+            int length = 0;
+            int size = 0;
+            while (length < text.length() && size + utf8Length(text.charAt(length)) <= remaining) {
+                size += utf8Length(text.charAt(length++));
+            }
+            if (length > 0) {
+                result.add(text.substring(0, length));
+                remaining -= size;
+            }
+            if (length < text.length()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Суррогатная пара дает 4 байта, по 2 на каждую половину.
+     */
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        return c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
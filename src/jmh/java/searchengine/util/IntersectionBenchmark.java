@@ -0,0 +1,127 @@
+package searchengine.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечение списков страниц для запросов из 2, 3 и 5 лемм: прежний поиск
+ * (множество страниц каждой леммы и retainAll, начиная с самой редкой)
+ * против прохода по сжатым спискам {@link PostingList.Snapshot} с прыжками
+ * по таблице пропусков, как в SearchIndexService.search.
+ * Частоты лемм распределены по Ципфу: лемма ранга r встречается примерно
+ * на PAGES * 0.3 / r страницах, ранги лемм запроса равномерны в логарифмической
+ * шкале, так что в запросах смешаны частые и редкие леммы.
+ * Операция - выполнение всех QUERIES запросов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntersectionBenchmark {
+
+    private static final int PAGES = 200_000;
+    private static final int VOCABULARY = 5_000;
+    private static final int QUERIES = 64;
+
+    @Param({"2", "3", "5"})
+    public int terms;
+
+    private int[][][] queryPageIds;
+    private PostingList.Snapshot[][] querySnapshots;
+    private int[] buffer;
+
+    private record Term(int[] pageIds, PostingList.Snapshot snapshot) {
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Map<Integer, Term> vocabulary = new HashMap<>();
+        queryPageIds = new int[QUERIES][][];
+        querySnapshots = new PostingList.Snapshot[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            Set<Integer> ranks = new HashSet<>();
+            while (ranks.size() < terms) {
+                ranks.add((int) Math.exp(random.nextDouble() * Math.log(VOCABULARY)) + 1);
+            }
+            List<Term> query = new ArrayList<>();
+            for (int rank : ranks) {
+                query.add(vocabulary.computeIfAbsent(rank, r -> term(random, r)));
+            }
+            query.sort(Comparator.comparingInt(term -> term.pageIds().length));
+            queryPageIds[q] = query.stream().map(Term::pageIds).toArray(int[][]::new);
+            querySnapshots[q] = query.stream().map(Term::snapshot).toArray(PostingList.Snapshot[]::new);
+        }
+        buffer = new int[PAGES];
+    }
+
+    @Benchmark
+    public int retainAll() {
+        int found = 0;
+        for (int[][] query : queryPageIds) {
+            Set<Integer> result = toSet(query[0]);
+            for (int k = 1; k < query.length && !result.isEmpty(); k++) {
+                result.retainAll(toSet(query[k]));
+            }
+            found += result.size();
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int galloping() {
+        int found = 0;
+        for (PostingList.Snapshot[] query : querySnapshots) {
+            PostingList.Cursor first = query[0].cursor();
+            int size = 0;
+            while (first.next()) {
+                buffer[size++] = first.pageId();
+            }
+            for (int k = 1; k < query.length && size > 0; k++) {
+                PostingList.Cursor cursor = query[k].cursor();
+                int matched = 0;
+                for (int i = 0; i < size && cursor.advance(buffer[i]); i++) {
+                    if (cursor.pageId() == buffer[i]) {
+                        buffer[matched++] = buffer[i];
+                    }
+                }
+                size = matched;
+            }
+            found += size;
+        }
+        return found;
+    }
+
+    private static Set<Integer> toSet(int[] pageIds) {
+        Set<Integer> set = new HashSet<>();
+        for (int pageId : pageIds) {
+            set.add(pageId);
+        }
+        return set;
+    }
+
+    /**
+     * Лемма ранга rank: каждая страница берется с вероятностью,
+     * дающей частоту по закону Ципфа.
+     */
+    private static Term term(Random random, int rank) {
+        double probability = 0.3 / rank;
+        int[] pageIds = new int[PAGES];
+        int size = 0;
+        for (int pageId = 1; pageId <= PAGES; pageId++) {
+            if (random.nextDouble() < probability) {
+                pageIds[size++] = pageId;
+            }
+        }
+        if (size == 0) {
+            pageIds[size++] = 1 + random.nextInt(PAGES);
+        }
+        float[] ranks = new float[size];
+        Arrays.fill(ranks, 1);
+        return new Term(Arrays.copyOf(pageIds, size), PostingList.Snapshot.encode(pageIds, ranks, size));
+    }
+}
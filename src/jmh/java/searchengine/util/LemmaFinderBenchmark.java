@@ -0,0 +1,104 @@
+package searchengine.util;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий экземпляр {@link LemmaFinder} против прежнего поведения, когда
+ * каждый вызов getInstance() заново загружал словарь RussianLuceneMorphology.
+ * Операция - лемматизация всех страниц из {@link BenchmarkTexts}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LemmaFinderBenchmark {
+
+    private static final String[] PARTICLES = {"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
+
+    @Param("")
+    public String pages;
+
+    private List<String> texts;
+
+    @Setup
+    public void setUp() throws IOException {
+        texts = BenchmarkTexts.load(pages);
+        LemmaFinder.getInstance();
+    }
+
+    @Benchmark
+    public void sharedInstance(Blackhole blackhole) throws IOException {
+        for (String text : texts) {
+            blackhole.consume(LemmaFinder.getInstance().collectLemmas(text));
+        }
+    }
+
+    /**
+     * То же из нескольких потоков: общий экземпляр не должен упираться в блокировки.
+     */
+    @Benchmark
+    @Threads(4)
+    public void sharedInstanceConcurrent(Blackhole blackhole) throws IOException {
+        sharedInstance(blackhole);
+    }
+
+    @Benchmark
+    public void morphologyPerCall(Blackhole blackhole) throws IOException {
+        for (String text : texts) {
+            blackhole.consume(collectLemmasPerCall(text));
+        }
+    }
+
+    /**
+     * Прежний LemmaFinder: новый словарь на каждый вызов, слова через replaceAll и split.
+     */
+    private static Map<String, Integer> collectLemmasPerCall(String text) throws IOException {
+        return collectLemmas(new RussianLuceneMorphology(), text);
+    }
+
+    /**
+     * Прежний разбор текста: строка на каждое слово, toUpperCase на каждую
+     * морфологическую характеристику, счетчики в HashMap.
+     */
+    static Map<String, Integer> collectLemmas(LuceneMorphology morphology, String text) {
+        String[] words = text.toLowerCase(Locale.ROOT)
+                .replaceAll("([^а-я\\s])", " ")
+                .trim()
+                .split("\\s+");
+        Map<String, Integer> lemmas = new HashMap<>();
+        for (String word : words) {
+            if (word.isBlank() || isParticle(morphology.getMorphInfo(word))) {
+                continue;
+            }
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (!normalForms.isEmpty()) {
+                lemmas.merge(normalForms.get(0), 1, Integer::sum);
+            }
+        }
+        return lemmas;
+    }
+
+    private static boolean isParticle(List<String> morphInfo) {
+        for (String info : morphInfo) {
+            String upperCase = info.toUpperCase();
+            for (String particle : PARTICLES) {
+                if (upperCase.contains(particle)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
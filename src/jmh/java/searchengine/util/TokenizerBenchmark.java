@@ -0,0 +1,82 @@
+package searchengine.util;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор текста {@link LemmaFinder} против прежнего: toLowerCase, replaceAll
+ * и split по всему тексту, toUpperCase на каждую морфологическую характеристику
+ * и счетчики в HashMap. Словарь морфологии в обоих случаях загружен заранее.
+ * Операция - один мегабайт текста в UTF-8 из {@link BenchmarkTexts}, поэтому
+ * время операции - время на мегабайт, а gc.alloc.rate.norm профилировщика gc -
+ * байты, выделенные на мегабайт текста.
+ * Прежний разбор пропускает латиницу, новый лемматизирует и ее.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+    private static final int MEGABYTE = 1 << 20;
+
+    @Param("")
+    public String pages;
+
+    private List<String> texts;
+    private LuceneMorphology morphology;
+
+    @Setup
+    public void setUp() throws IOException {
+        texts = BenchmarkTexts.repeatToSize(BenchmarkTexts.load(pages), MEGABYTE);
+        morphology = new RussianLuceneMorphology();
+        LemmaFinder.getInstance();
+    }
+
+    /**
+     * Только разбиение на слова: строка на каждое слово.
+     */
+    @Benchmark
+    public void splitWords(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(text.toLowerCase(Locale.ROOT)
+                    .replaceAll("([^а-я\\s])", " ")
+                    .trim()
+                    .split("\\s+"));
+        }
+    }
+
+    /**
+     * Только разбиение на слова: границы слов без строк.
+     */
+    @Benchmark
+    public void tokenizerWords(Blackhole blackhole) {
+        for (String text : texts) {
+            WordTokenizer.forEachWord(text, (start, end) -> blackhole.consume(end - start));
+        }
+    }
+
+    @Benchmark
+    public void legacyCollectLemmas(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(LemmaFinderBenchmark.collectLemmas(morphology, text));
+        }
+    }
+
+    @Benchmark
+    public void collectLemmas(Blackhole blackhole) throws IOException {
+        LemmaFinder lemmaFinder = LemmaFinder.getInstance();
+        for (String text : texts) {
+            blackhole.consume(lemmaFinder.collectLemmas(text));
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package searchengine.config;
+
+public enum ScorerType {
+    BM25,
+    RANK_SUM
+}
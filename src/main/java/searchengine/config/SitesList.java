@@ -17,4 +17,31 @@ public class SitesList {
     private String userAgent;
     private String referrer;
     private long requestDelay;
+    private boolean incremental;
+    private long maxRequestDelay = 60_000;
+    private int maxConcurrencyPerHost = 2;
+    private FetchMode fetchMode = FetchMode.PLATFORM;
+    private int fetchThreads = 32;
+    private int maxInFlightFetches = 1000;
+    private int maxBodySize = 2 * 1024 * 1024;
+    private int parseThreads;
+    private int writeThreads = 2;
+    private int writeBatchSize = 16;
+    private int queueCapacity = 256;
+    private int checkpointBatchSize = 500;
+    private int pageIndexThreads = 4;
+    private int pageIndexQueueCapacity = 10_000;
+    private int pageIndexBatchSize = 16;
+    private int pageIndexJobHistory = 100_000;
+    private SeenUrlMode seenUrlMode = SeenUrlMode.FINGERPRINT;
+    private int seenUrlMemoryLimit = 1_000_000;
+    private boolean seenUrlBloomFilter = true;
+    private String seenUrlSpillDirectory = System.getProperty("java.io.tmpdir");
+    private long searchCacheMaxWeight = 64L * 1024 * 1024;
+    private int searchThreads;
+    private long searchTimeout = 2000;
+    private ScorerType scorer = ScorerType.BM25;
+    private float bm25K1 = 1.2f;
+    private float bm25B = 0.75f;
+    private String segmentDirectory = "data/segments";
 }
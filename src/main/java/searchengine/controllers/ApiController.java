@@ -7,9 +7,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.response.ResponseBoolean;
+import searchengine.dto.statistics.response.ResponsePageIndexJobs;
 import searchengine.services.IndexingSiteService;
+import searchengine.services.PageIndexJobService;
 import searchengine.services.StatisticsService;
 
+import java.util.List;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/api")
@@ -17,6 +21,7 @@ public class ApiController {
 
     private final StatisticsService statisticsService;
     private final IndexingSiteService indexingSiteService;
+    private final PageIndexJobService pageIndexJobService;
 
 
     @GetMapping("/statistics")
@@ -37,10 +42,28 @@ public class ApiController {
         return indexingSiteService.stopIndexing();
     }
 
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/pipeline")
+    public ResponseBoolean pipeline() {
+        return indexingSiteService.getPipelineStatistics();
+    }
+
     @ResponseStatus(HttpStatus.OK)
     @PostMapping("/indexPage")
     public ResponseBoolean indexPage(@RequestBody String urlPage) {
-        return indexingSiteService.indexPage(urlPage);
+        return pageIndexJobService.submit(urlPage);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @PostMapping("/indexPages")
+    public ResponsePageIndexJobs indexPages(@RequestBody List<String> urls) {
+        return pageIndexJobService.submitAll(urls);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/indexPage/{jobId}")
+    public ResponseBoolean indexPageStatus(@PathVariable String jobId) {
+        return pageIndexJobService.getStatus(jobId);
     }
 
     @ResponseStatus(HttpStatus.OK)
@@ -52,4 +75,10 @@ public class ApiController {
         return indexingSiteService.search(query, site, offset, limit);
     }
 
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/search/cache")
+    public ResponseBoolean searchCache() {
+        return indexingSiteService.getSearchCacheStatistics();
+    }
+
 }
@@ -0,0 +1,16 @@
+package searchengine.dto.statistics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StageStatistics {
+    private String name;
+    private int workers;
+    private int busyWorkers;
+    private int queueSize;
+    private int queueCapacity;
+    private long processed;
+    private double throughput;
+}
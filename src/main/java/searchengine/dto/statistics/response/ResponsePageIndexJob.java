@@ -0,0 +1,22 @@
+package searchengine.dto.statistics.response;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import searchengine.model.PageIndexJobStatus;
+
+@Data
+@NoArgsConstructor(force = true)
+public class ResponsePageIndexJob extends ResponseBoolean {
+    String jobId;
+    String url;
+    PageIndexJobStatus status;
+    String error;
+
+    public ResponsePageIndexJob(boolean result, String jobId, String url, PageIndexJobStatus status, String error) {
+        super(result);
+        this.jobId = jobId;
+        this.url = url;
+        this.status = status;
+        this.error = error;
+    }
+}
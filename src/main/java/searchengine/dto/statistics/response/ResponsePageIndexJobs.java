@@ -0,0 +1,17 @@
+package searchengine.dto.statistics.response;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor(force = true)
+public class ResponsePageIndexJobs extends ResponseBoolean {
+    List<ResponsePageIndexJob> jobs;
+
+    public ResponsePageIndexJobs(boolean result, List<ResponsePageIndexJob> jobs) {
+        super(result);
+        this.jobs = jobs;
+    }
+}
@@ -0,0 +1,18 @@
+package searchengine.dto.statistics.response;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import searchengine.dto.statistics.StageStatistics;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor(force = true)
+public class ResponsePipeline extends ResponseBoolean {
+    List<StageStatistics> stages;
+
+    public ResponsePipeline(boolean result, List<StageStatistics> stages) {
+        super(result);
+        this.stages = stages;
+    }
+}
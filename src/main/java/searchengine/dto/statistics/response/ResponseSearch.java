@@ -11,6 +11,7 @@ import java.util.List;
 public class ResponseSearch extends ResponseBoolean{
     Integer count;
     List<SearchResult> data;
+    boolean partial;
 
     public ResponseSearch(boolean result, Integer count, List<SearchResult> data) {
         super(result);
@@ -18,6 +19,14 @@ public class ResponseSearch extends ResponseBoolean{
         this.data = data;
     }
 
+    /**
+     * @param partial часть сайтов не успела ответить, результаты неполные
+     */
+    public ResponseSearch(boolean result, Integer count, List<SearchResult> data, boolean partial) {
+        this(result, count, data);
+        this.partial = partial;
+    }
+
     public ResponseSearch(Integer count, List<SearchResult> data) {
         this.count = count;
         this.data = data;
@@ -0,0 +1,25 @@
+package searchengine.dto.statistics.response;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor(force = true)
+public class ResponseSearchCache extends ResponseBoolean {
+    long hits;
+    long misses;
+    long evictions;
+    long staleEntries;
+    double hitRate;
+    long size;
+
+    public ResponseSearchCache(boolean result, long hits, long misses, long evictions, long staleEntries, double hitRate, long size) {
+        super(result);
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.staleEntries = staleEntries;
+        this.hitRate = hitRate;
+        this.size = size;
+    }
+}
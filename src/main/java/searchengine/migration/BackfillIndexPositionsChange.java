@@ -0,0 +1,94 @@
+package searchengine.migration;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import searchengine.util.LemmaFinder;
+import searchengine.util.TokenPositions;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Заполняет positions у строк index, сохраненных до появления колонки:
+ * текст страницы заново разбивается на слова, и каждой строке записываются
+ * позиции ее леммы. Страницы обрабатываются пачками по id.
+ */
+public class BackfillIndexPositionsChange implements CustomTaskChange {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String SELECT_PAGES_SQL =
+            "SELECT p.id, p.text FROM page p WHERE p.id > ? AND p.text IS NOT NULL " +
+                    "AND EXISTS (SELECT 1 FROM \"index\" i WHERE i.page_id = p.id AND i.positions IS NULL) " +
+                    "ORDER BY p.id LIMIT " + BATCH_SIZE;
+    private static final String SELECT_INDEXES_SQL =
+            "SELECT i.id, l.lemma FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id " +
+                    "WHERE i.page_id = ? AND i.positions IS NULL";
+    private static final String UPDATE_SQL = "UPDATE \"index\" SET positions = ? WHERE id = ?";
+
+    private int updated;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        LemmaFinder lemmaFinder = LemmaFinder.getInstance();
+        try (PreparedStatement selectPages = connection.prepareStatement(SELECT_PAGES_SQL);
+             PreparedStatement selectIndexes = connection.prepareStatement(SELECT_INDEXES_SQL);
+             PreparedStatement update = connection.prepareStatement(UPDATE_SQL)) {
+            int lastId = 0;
+            int batch;
+            do {
+                batch = 0;
+                selectPages.setInt(1, lastId);
+                try (ResultSet pages = selectPages.executeQuery()) {
+                    while (pages.next()) {
+                        lastId = pages.getInt("id");
+                        batch++;
+                        Map<String, TokenPositions> positions =
+                                lemmaFinder.collectLemmaPositions(pages.getString("text"));
+                        selectIndexes.setInt(1, lastId);
+                        try (ResultSet indexes = selectIndexes.executeQuery()) {
+                            while (indexes.next()) {
+                                TokenPositions lemmaPositions = positions.get(indexes.getString("lemma"));
+                                if (lemmaPositions == null) {
+                                    continue;
+                                }
+                                update.setBytes(1, lemmaPositions.encode());
+                                update.setInt(2, indexes.getInt("id"));
+                                update.addBatch();
+                                updated++;
+                            }
+                        }
+                    }
+                }
+                update.executeBatch();
+            } while (batch == BATCH_SIZE);
+        } catch (SQLException e) {
+            throw new CustomChangeException("Не удалось заполнить позиции лемм", e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Заполнены позиции у " + updated + " строк index";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
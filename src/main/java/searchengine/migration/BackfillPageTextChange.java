@@ -0,0 +1,77 @@
+package searchengine.migration;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Заполняет title и text уже сохраненных страниц, разбирая content.
+ * Страницы обрабатываются пачками по id, чтобы не держать в памяти всю таблицу.
+ */
+public class BackfillPageTextChange implements CustomTaskChange {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String SELECT_SQL =
+            "SELECT id, content FROM page WHERE id > ? AND text IS NULL ORDER BY id LIMIT " + BATCH_SIZE;
+    private static final String UPDATE_SQL = "UPDATE page SET title = ?, text = ? WHERE id = ?";
+
+    private int updated;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+             PreparedStatement update = connection.prepareStatement(UPDATE_SQL)) {
+            int lastId = 0;
+            int batch;
+            do {
+                batch = 0;
+                select.setInt(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getInt("id");
+                        String content = rs.getString("content");
+                        Document doc = Jsoup.parse(content == null ? "" : content);
+                        update.setString(1, doc.title());
+                        update.setString(2, doc.text());
+                        update.setInt(3, lastId);
+                        update.addBatch();
+                        batch++;
+                    }
+                }
+                update.executeBatch();
+                updated += batch;
+            } while (batch == BATCH_SIZE);
+        } catch (SQLException e) {
+            throw new CustomChangeException("Не удалось заполнить title и text страниц", e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Заполнены title и text у " + updated + " страниц";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
@@ -0,0 +1,79 @@
+package searchengine.migration;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import searchengine.util.PageContentCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Переносит content страниц в page_content в сжатом виде.
+ * Пустой content не переносится. Страницы обрабатываются пачками по id.
+ */
+public class MovePageContentChange implements CustomTaskChange {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String SELECT_SQL =
+            "SELECT id, site_id, content FROM page WHERE id > ? ORDER BY id LIMIT " + BATCH_SIZE;
+    private static final String INSERT_SQL = "INSERT INTO page_content (page_id, site_id, content) VALUES (?, ?, ?)";
+
+    private int moved;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+             PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            int lastId = 0;
+            int batch;
+            do {
+                batch = 0;
+                select.setInt(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getInt("id");
+                        batch++;
+                        String content = rs.getString("content");
+                        if (content == null || content.isEmpty()) {
+                            continue;
+                        }
+                        insert.setInt(1, lastId);
+                        insert.setInt(2, rs.getInt("site_id"));
+                        insert.setBytes(3, PageContentCodec.compress(content.getBytes(StandardCharsets.UTF_8)));
+                        insert.addBatch();
+                        moved++;
+                    }
+                }
+                insert.executeBatch();
+            } while (batch == BATCH_SIZE);
+        } catch (SQLException e) {
+            throw new CustomChangeException("Не удалось перенести content страниц в page_content", e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Перенесено содержимое " + moved + " страниц";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
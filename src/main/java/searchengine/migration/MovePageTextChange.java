@@ -0,0 +1,82 @@
+package searchengine.migration;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import searchengine.util.PageContentCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Переносит title и text страниц в page_content, текст в сжатом виде.
+ * Страницы обрабатываются пачками по id.
+ */
+public class MovePageTextChange implements CustomTaskChange {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String SELECT_SQL =
+            "SELECT id, site_id, title, text FROM page WHERE id > ? ORDER BY id LIMIT " + BATCH_SIZE;
+    private static final String UPSERT_SQL = "INSERT INTO page_content (page_id, site_id, title, text) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (page_id, site_id) DO UPDATE SET title = EXCLUDED.title, text = EXCLUDED.text";
+
+    private int moved;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+             PreparedStatement upsert = connection.prepareStatement(UPSERT_SQL)) {
+            int lastId = 0;
+            int batch;
+            do {
+                batch = 0;
+                select.setInt(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getInt("id");
+                        batch++;
+                        String title = rs.getString("title");
+                        String text = rs.getString("text");
+                        if (title == null && text == null) {
+                            continue;
+                        }
+                        upsert.setInt(1, lastId);
+                        upsert.setInt(2, rs.getInt("site_id"));
+                        upsert.setString(3, title);
+                        upsert.setBytes(4, text == null ? null : PageContentCodec.compress(text.getBytes(StandardCharsets.UTF_8)));
+                        upsert.addBatch();
+                        moved++;
+                    }
+                }
+                upsert.executeBatch();
+            } while (batch == BATCH_SIZE);
+        } catch (SQLException e) {
+            throw new CustomChangeException("Не удалось перенести текст страниц в page_content", e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Перенесен текст " + moved + " страниц";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
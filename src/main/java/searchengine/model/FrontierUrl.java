@@ -0,0 +1,4 @@
+package searchengine.model;
+
+public record FrontierUrl(int siteId, String url, int depth, int priority, FrontierUrlStatus status) {
+}
@@ -0,0 +1,8 @@
+package searchengine.model;
+
+public enum FrontierUrlStatus {
+    QUEUED,
+    IN_FLIGHT,
+    DONE,
+    FAILED
+}
@@ -15,6 +15,10 @@ public class Index {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "site_id")
+    private SiteEntity site;
+
     @ManyToOne
     @JoinColumn(name = "page_id")
     private Page page;
@@ -27,8 +27,36 @@ public class Page {
     @Column(name = "code")
     private int code;
 
-    @Column(name = "content")
-    private String content;
+    /**
+     * HTML страницы в кодировке ответа сервера, хранится сжатым
+     * в page_content ({@link searchengine.repository.PageContentJdbcRepository}).
+     */
+    @Transient
+    private byte[] content;
+
+    /**
+     * Кодировка content, сохраняется вместе с ним.
+     */
+    @Transient
+    private String charset;
+
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "last_modified")
+    private String lastModified;
+
+    @Column(name = "content_hash")
+    private String contentHash;
+
+    /**
+     * Заголовок и видимый текст страницы для выдачи, хранятся вместе с content в page_content.
+     */
+    @Transient
+    private String title;
+
+    @Transient
+    private String text;
 
 
 
@@ -0,0 +1,8 @@
+package searchengine.model;
+
+public enum PageIndexJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
@@ -0,0 +1,11 @@
+package searchengine.model;
+
+public interface PageVersion {
+    int getId();
+
+    String getEtag();
+
+    String getLastModified();
+
+    String getContentHash();
+}
@@ -0,0 +1,49 @@
+package searchengine.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import searchengine.model.FrontierUrl;
+import searchengine.model.FrontierUrlStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class FrontierJdbcRepository {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO frontier (site_id, url, depth, priority, status) VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (site_id, url) DO UPDATE SET status = EXCLUDED.status";
+    private static final String HAS_UNFINISHED_SQL =
+            "SELECT EXISTS (SELECT 1 FROM frontier WHERE site_id = ? AND status IN ('QUEUED', 'IN_FLIGHT'))";
+    private static final String SELECT_BY_SITE_SQL =
+            "SELECT url, depth, priority, status FROM frontier WHERE site_id = ? ORDER BY priority, id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void saveAll(Collection<FrontierUrl> urls) {
+        List<Object[]> rows = new ArrayList<>(urls.size());
+        for (FrontierUrl url : urls) {
+            rows.add(new Object[]{url.siteId(), url.url(), url.depth(), url.priority(), url.status().name()});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    }
+
+    public boolean hasUnfinished(int siteId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_UNFINISHED_SQL, Boolean.class, siteId));
+    }
+
+    public void forEachBySite(int siteId, Consumer<FrontierUrl> consumer) {
+        jdbcTemplate.query(SELECT_BY_SITE_SQL, (RowCallbackHandler) rs -> consumer.accept(new FrontierUrl(
+                siteId,
+                rs.getString("url"),
+                rs.getInt("depth"),
+                rs.getInt("priority"),
+                FrontierUrlStatus.valueOf(rs.getString("status")))), siteId);
+    }
+}
@@ -0,0 +1,207 @@
+package searchengine.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.util.TokenPositions;
+
+import java.sql.PreparedStatement;
+import java.util.*;
+
+/**
+ * Запись лемм и индексов страницы несколькими set-based запросами
+ * вместо find/save на каждое слово. Идентификаторы генерирует сама база
+ * (IDENTITY), поэтому запись идет в обход Hibernate.
+ * Леммы вставляются в отсортированном порядке, чтобы параллельные
+ * транзакции брали блокировки уникального индекса в одном порядке.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LemmaIndexJdbcRepository {
+
+    private static final String INSERT_LEMMAS_SQL =
+            "INSERT INTO lemma (site_id, lemma, frequency) SELECT ?, unnest(?), 0 " +
+                    "ON CONFLICT (site_id, lemma) DO NOTHING";
+    private static final String SELECT_LEMMA_IDS_SQL =
+            "SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma = ANY(?)";
+    private static final String ADD_FREQUENCIES_SQL =
+            "INSERT INTO lemma (site_id, lemma, frequency) SELECT ?, unnest(?), unnest(?) " +
+                    "ON CONFLICT (site_id, lemma) DO UPDATE SET frequency = lemma.frequency + EXCLUDED.frequency";
+    private static final String INSERT_INDEXES_SQL =
+            "INSERT INTO \"index\" (site_id, page_id, lemma_id, rank, positions) SELECT ?, ?, unnest(?), unnest(?), unnest(?)";
+    private static final String SELECT_PAGE_INDEXES_SQL =
+            "SELECT l.lemma, i.lemma_id, i.rank, i.positions FROM \"index\" i " +
+                    "JOIN lemma l ON l.id = i.lemma_id AND l.site_id = i.site_id WHERE i.site_id = ? AND i.page_id = ?";
+    private static final String DELETE_INDEXES_SQL =
+            "DELETE FROM \"index\" WHERE site_id = ? AND page_id = ? AND lemma_id = ANY(?)";
+    private static final String UPDATE_INDEXES_SQL =
+            "UPDATE \"index\" i SET rank = v.rank, positions = v.positions " +
+                    "FROM (SELECT unnest(?) AS lemma_id, unnest(?) AS rank, unnest(?) AS positions) v " +
+                    "WHERE i.site_id = ? AND i.page_id = ? AND i.lemma_id = v.lemma_id";
+    private static final String SELECT_POSITIONS_SQL =
+            "SELECT i.page_id, l.lemma, i.positions FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id AND l.site_id = i.site_id " +
+                    "WHERE i.page_id = ANY(?) AND l.lemma = ANY(?)";
+    private static final String SELECT_POSTINGS_SQL =
+            "SELECT l.site_id, l.lemma, i.page_id, i.rank FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id AND l.site_id = i.site_id " +
+                    "WHERE i.site_id = ANY(?) ORDER BY i.lemma_id, i.page_id";
+    private static final int POSTINGS_FETCH_SIZE = 10_000;
+
+    /**
+     * @param positions позиции слов в формате {@link TokenPositions#encode()}
+     */
+    public record IndexedLemma(int lemmaId, float rank, byte[] positions) {
+    }
+
+    @FunctionalInterface
+    public interface PostingConsumer {
+        void accept(int siteId, String lemma, int pageId, float rank);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Map<String, Integer> findOrCreateLemmaIds(int siteId, Collection<String> lemmas) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        if (lemmas.isEmpty()) {
+            return lemmaIds;
+        }
+        String[] sortedLemmas = lemmas.toArray(new String[0]);
+        Arrays.sort(sortedLemmas);
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_LEMMAS_SQL);
+            statement.setInt(1, siteId);
+            statement.setArray(2, connection.createArrayOf("text", sortedLemmas));
+            return statement;
+        });
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_LEMMA_IDS_SQL);
+            statement.setInt(1, siteId);
+            statement.setArray(2, connection.createArrayOf("text", sortedLemmas));
+            return statement;
+        }, (RowCallbackHandler) rs -> lemmaIds.put(rs.getString("lemma"), rs.getInt("id")));
+        return lemmaIds;
+    }
+
+    public void addFrequencies(int siteId, Map<String, Integer> frequencies) {
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        SortedMap<String, Integer> sortedFrequencies = new TreeMap<>(frequencies);
+        String[] lemmas = sortedFrequencies.keySet().toArray(new String[0]);
+        Integer[] values = sortedFrequencies.values().toArray(new Integer[0]);
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(ADD_FREQUENCIES_SQL);
+            statement.setInt(1, siteId);
+            statement.setArray(2, connection.createArrayOf("text", lemmas));
+            statement.setArray(3, connection.createArrayOf("int4", values));
+            return statement;
+        });
+    }
+
+    public Map<String, IndexedLemma> findIndexesByPage(int siteId, int pageId) {
+        Map<String, IndexedLemma> indexes = new HashMap<>();
+        jdbcTemplate.query(SELECT_PAGE_INDEXES_SQL, (RowCallbackHandler) rs -> indexes.put(rs.getString("lemma"),
+                new IndexedLemma(rs.getInt("lemma_id"), rs.getFloat("rank"), rs.getBytes("positions"))), siteId, pageId);
+        return indexes;
+    }
+
+    public void deleteIndexes(int siteId, int pageId, Collection<Integer> lemmaIds) {
+        if (lemmaIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(DELETE_INDEXES_SQL);
+            statement.setInt(1, siteId);
+            statement.setInt(2, pageId);
+            statement.setArray(3, connection.createArrayOf("int4", lemmaIds.toArray()));
+            return statement;
+        });
+    }
+
+    /**
+     * Обновляет rank и позиции у индексов страницы, ключ - id леммы.
+     */
+    public void updateIndexes(int siteId, int pageId, Map<Integer, TokenPositions> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        Integer[] ids = positions.keySet().toArray(new Integer[0]);
+        Double[] values = new Double[ids.length];
+        byte[][] encoded = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = (double) positions.get(ids[i]).size();
+            encoded[i] = positions.get(ids[i]).encode();
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(UPDATE_INDEXES_SQL);
+            statement.setArray(1, connection.createArrayOf("int4", ids));
+            statement.setArray(2, connection.createArrayOf("float8", values));
+            statement.setArray(3, connection.createArrayOf("bytea", encoded));
+            statement.setInt(4, siteId);
+            statement.setInt(5, pageId);
+            return statement;
+        });
+    }
+
+    /**
+     * Вставляет индексы страницы, rank - число вхождений леммы.
+     */
+    public void insertIndexes(int siteId, int pageId, Map<String, Integer> lemmaIds, Map<String, TokenPositions> positions) {
+        Integer[] ids = new Integer[positions.size()];
+        Double[] values = new Double[positions.size()];
+        byte[][] encoded = new byte[positions.size()][];
+        int i = 0;
+        for (Map.Entry<String, TokenPositions> entry : positions.entrySet()) {
+            ids[i] = lemmaIds.get(entry.getKey());
+            values[i] = (double) entry.getValue().size();
+            encoded[i] = entry.getValue().encode();
+            i++;
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_INDEXES_SQL);
+            statement.setInt(1, siteId);
+            statement.setInt(2, pageId);
+            statement.setArray(3, connection.createArrayOf("int4", ids));
+            statement.setArray(4, connection.createArrayOf("float8", values));
+            statement.setArray(5, connection.createArrayOf("bytea", encoded));
+            return statement;
+        });
+    }
+
+    /**
+     * @return id страницы -> лемма -> смещения ее слов в тексте страницы
+     */
+    public Map<Integer, Map<String, int[]>> findPositions(Collection<Integer> pageIds, Collection<String> lemmas) {
+        Map<Integer, Map<String, int[]>> positions = new HashMap<>();
+        if (pageIds.isEmpty() || lemmas.isEmpty()) {
+            return positions;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_POSITIONS_SQL);
+            statement.setArray(1, connection.createArrayOf("int4", pageIds.toArray()));
+            statement.setArray(2, connection.createArrayOf("text", lemmas.toArray()));
+            return statement;
+        }, (RowCallbackHandler) rs -> positions.computeIfAbsent(rs.getInt("page_id"), k -> new HashMap<>())
+                .put(rs.getString("lemma"), TokenPositions.decode(rs.getBytes("positions"))));
+        return positions;
+    }
+
+    /**
+     * Читает индексы сайтов курсором, сгруппированными по лемме
+     * и отсортированными по id страницы.
+     */
+    @Transactional(readOnly = true)
+    public void forEachPosting(Collection<Integer> siteIds, PostingConsumer consumer) {
+        if (siteIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_POSTINGS_SQL);
+            statement.setArray(1, connection.createArrayOf("int4", siteIds.toArray()));
+            statement.setFetchSize(POSTINGS_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getInt("site_id"), rs.getString("lemma"),
+                rs.getInt("page_id"), rs.getFloat("rank")));
+    }
+}
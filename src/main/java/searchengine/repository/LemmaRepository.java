@@ -9,7 +9,7 @@ import searchengine.model.SiteEntity;
 
 @Repository
 public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
-    boolean existsByLemmaAndSiteId(String lemma, SiteEntity siteId);
+    boolean existsByLemmaAndSite(String lemma, SiteEntity site);
     Lemma findByLemmaAndSite(String lemmaText, SiteEntity siteEntity);
     @Query("SELECT COUNT(l) FROM Lemma l WHERE l.site = :site")
     Integer countLemmaBySite(@Param("site") SiteEntity site);
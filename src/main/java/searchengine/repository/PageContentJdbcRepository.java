@@ -0,0 +1,81 @@
+package searchengine.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import searchengine.util.PageContentCodec;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTML, заголовок и текст страниц хранятся в отдельной таблице page_content,
+ * чтобы строки page оставались короткими и не тянули их через Hibernate.
+ * HTML лежит сжатым в кодировке ответа сервера, кодировка хранится рядом;
+ * текст сжат в UTF-8.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PageContentJdbcRepository {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO page_content (page_id, site_id, content, charset, title, text) VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (page_id, site_id) DO UPDATE SET content = EXCLUDED.content, charset = EXCLUDED.charset, " +
+                    "title = EXCLUDED.title, text = EXCLUDED.text";
+    private static final String SELECT_SQL =
+            "SELECT content, charset FROM page_content WHERE site_id = ? AND page_id = ?";
+    private static final String SELECT_TEXTS_SQL =
+            "SELECT page_id, title, text FROM page_content WHERE page_id = ANY(?)";
+
+    public record PageText(String title, String text) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param content HTML страницы, пустой или null не сохраняется
+     */
+    public void save(int siteId, int pageId, byte[] content, String charset, String title, String text) {
+        boolean hasContent = content != null && content.length > 0;
+        jdbcTemplate.update(UPSERT_SQL, pageId, siteId, hasContent ? PageContentCodec.compress(content) : null,
+                hasContent && charset != null ? charset : StandardCharsets.UTF_8.name(), title,
+                text == null ? null : PageContentCodec.compress(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return HTML страницы или null, если содержимое не сохранялось
+     */
+    public String find(int siteId, int pageId) {
+        List<String> content = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> {
+            byte[] compressed = rs.getBytes("content");
+            return compressed == null ? null : new String(PageContentCodec.decompress(compressed), Charset.forName(rs.getString("charset")));
+        }, siteId, pageId);
+        return content.isEmpty() ? null : content.get(0);
+    }
+
+    /**
+     * @return id страницы -> заголовок и текст; страниц без сохраненного текста нет в результате
+     */
+    public Map<Integer, PageText> findTexts(Collection<Integer> pageIds) {
+        Map<Integer, PageText> texts = new HashMap<>();
+        if (pageIds.isEmpty()) {
+            return texts;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_TEXTS_SQL);
+            statement.setArray(1, connection.createArrayOf("int4", pageIds.toArray()));
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            byte[] text = rs.getBytes("text");
+            texts.put(rs.getInt("page_id"), new PageText(rs.getString("title"),
+                    text == null ? null : new String(PageContentCodec.decompress(text), StandardCharsets.UTF_8)));
+        });
+        return texts;
+    }
+}
@@ -8,14 +8,17 @@ import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Index;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
+import searchengine.model.PageVersion;
 import searchengine.model.SiteEntity;
 
 import java.util.List;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page, Integer> {
-    Page findByContent(String content);
     boolean existsByPathAndSite(String path, SiteEntity site);
+    PageVersion findFirstByPathAndSite(String path, SiteEntity site);
+    @Query("SELECT p.path FROM Page p WHERE p.site = :site")
+    List<String> findPathsBySite(@Param("site") SiteEntity site);
     boolean existsByPath(String path);
     @Transactional
     void deleteByPath(String path);
@@ -0,0 +1,44 @@
+package searchengine.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Секции таблиц page, page_content, lemma, index и frontier по сайту. Секции создаются вместе с сайтом,
+ * удаление сайта отсоединяет и удаляет их целиком вместо каскадного DELETE.
+ * Порядок важен: index и page_content ссылаются на page и lemma.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PartitionJdbcRepository {
+
+    private static final String[] TABLES = {"page", "page_content", "lemma", "index", "frontier"};
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void createPartitions(int siteId) {
+        for (String table : TABLES) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition(table, siteId) +
+                    " PARTITION OF \"" + table + "\" FOR VALUES IN (" + siteId + ")");
+        }
+    }
+
+    public void dropPartitions(int siteId) {
+        for (int i = TABLES.length - 1; i >= 0; i--) {
+            String partition = partition(TABLES[i], siteId);
+            if (exists(partition)) {
+                jdbcTemplate.execute("ALTER TABLE \"" + TABLES[i] + "\" DETACH PARTITION " + partition);
+                jdbcTemplate.execute("DROP TABLE " + partition);
+            }
+        }
+    }
+
+    private boolean exists(String partition) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition));
+    }
+
+    private static String partition(String table, int siteId) {
+        return table + "_" + siteId;
+    }
+}
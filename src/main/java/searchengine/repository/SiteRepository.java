@@ -1,13 +1,24 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.Site;
 import searchengine.model.SiteEntity;
 
+import java.time.Instant;
+
 @Repository
 public interface SiteRepository extends JpaRepository<SiteEntity, Integer> {
 
     SiteEntity findByUrl(String url);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE SiteEntity s SET s.statusTime = :statusTime WHERE s.id = :id")
+    void updateStatusTime(@Param("id") int id, @Param("statusTime") Instant statusTime);
+
 }
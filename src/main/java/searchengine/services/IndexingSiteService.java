@@ -4,35 +4,41 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.statistics.response.ResponseBoolean;
 import searchengine.dto.statistics.response.ResponseError;
+import searchengine.dto.statistics.response.ResponsePipeline;
 import searchengine.dto.statistics.response.ResponseSearch;
 import searchengine.dto.statistics.response.SearchResult;
 import searchengine.model.*;
-import searchengine.repository.IndexRepository;
-import searchengine.repository.LemmaRepository;
+import searchengine.repository.FrontierJdbcRepository;
+import searchengine.repository.LemmaIndexJdbcRepository;
+import searchengine.repository.PageContentJdbcRepository;
+import searchengine.repository.PageContentJdbcRepository.PageText;
 import searchengine.repository.PageRepository;
+import searchengine.repository.PartitionJdbcRepository;
 import searchengine.repository.SiteRepository;
 import searchengine.util.LemmaFinder;
-import searchengine.util.PageCrawlerTask;
-
+import searchengine.util.ContentHash;
+import searchengine.util.CrawlPipeline;
+import searchengine.util.HtmlExtractor;
+import searchengine.util.PageLemmas;
+import searchengine.util.PipelineStage;
+import searchengine.util.SnippetBuilder;
+import searchengine.util.TokenPositions;
+import searchengine.util.TopHits;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.awt.image.ImageObserver;
 import java.io.IOException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -41,29 +47,78 @@ public class IndexingSiteService {
 
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
     private final SitesList sitesList;
-    private ForkJoinPool forkJoinPool;
+    private final PageIndexer pageIndexer;
+    private final LemmaFrequencyCounter lemmaFrequencyCounter;
+    private final FrontierJdbcRepository frontierRepository;
+    private final SearchIndexService searchIndexService;
+    private final SearchCacheService searchCacheService;
+    private final LemmaIndexJdbcRepository lemmaIndexJdbcRepository;
+    private final PartitionJdbcRepository partitionRepository;
+    private final PageContentJdbcRepository pageContentRepository;
+    private volatile CrawlPipeline crawlPipeline;
     private final AtomicBoolean isIndexingRunning = new AtomicBoolean(false);
+    private ExecutorService searchExecutor;
+
+    @PostConstruct
+    public void loadMorphology() throws IOException {
+        LemmaFinder.getInstance();
+    }
 
+    @PostConstruct
+    public void startSearchExecutor() {
+        int searchThreads = sitesList.getSearchThreads() > 0 ? sitesList.getSearchThreads() : Runtime.getRuntime().availableProcessors();
+        searchExecutor = Executors.newFixedThreadPool(searchThreads, PipelineStage.namedThreads("search"));
+    }
+
+    @PreDestroy
+    public void stopSearchExecutor() {
+        searchExecutor.shutdownNow();
+    }
 
     public void deleteSiteData(String url) {
         SiteEntity site = siteRepository.findByUrl(url);
         if (site != null) {
             log.info("Удалить данные сайта " + url);
+            lemmaFrequencyCounter.removeSite(site.getId());
+            partitionRepository.dropPartitions(site.getId());
             siteRepository.delete(site);
+            searchIndexService.removeSite(site.getId());
         } else {
             log.warn("Сайт {} не найден, начинаем индексацию", url);
         }
     }
 
 
-    public void deleteAllSiteDate() {
-        List<Site> sites = sitesList.getSites();
-        for (Site site : sites) {
-            deleteSiteData(site.getUrl());
+    /**
+     * Сайт с незавершенным фронтиром продолжает индексацию с места остановки.
+     * В инкрементальном режиме проиндексированный сайт не удаляется,
+     * а перепроверяется постранично. Остальные сайты удаляются и индексируются заново.
+     */
+    public Map<SiteEntity, CrawlPipeline.CrawlMode> prepareSites() {
+        Map<SiteEntity, CrawlPipeline.CrawlMode> siteModes = new LinkedHashMap<>();
+        for (Site site : sitesList.getSites()) {
+            SiteEntity siteEntity = siteRepository.findByUrl(site.getUrl());
+            if (siteEntity != null && siteEntity.getStatus() != StatusIndexingSite.INDEXED
+                    && frontierRepository.hasUnfinished(siteEntity.getId())) {
+                log.info("Продолжение прерванной индексации сайта {}", site.getUrl());
+                siteModes.put(restartIndexing(siteEntity), CrawlPipeline.CrawlMode.RESUME);
+            } else if (siteEntity != null && sitesList.isIncremental() && siteEntity.getStatus() == StatusIndexingSite.INDEXED) {
+                log.info("Инкрементальная индексация сайта {}", site.getUrl());
+                siteModes.put(restartIndexing(siteEntity), CrawlPipeline.CrawlMode.INCREMENTAL);
+            } else {
+                deleteSiteData(site.getUrl());
+                siteModes.put(createEntryInTableSite(site), CrawlPipeline.CrawlMode.FULL);
+            }
         }
+        return siteModes;
+    }
+
+    private SiteEntity restartIndexing(SiteEntity siteEntity) {
+        siteEntity.setStatus(StatusIndexingSite.INDEXING);
+        siteEntity.setLastError("");
+        siteEntity.setStatusTime(Instant.now());
+        return siteRepository.save(siteEntity);
     }
 
 
@@ -74,30 +129,22 @@ public class IndexingSiteService {
         siteEntity.setStatusTime(Instant.now());
         siteEntity.setStatus(StatusIndexingSite.INDEXING);
         siteEntity.setLastError("");
-        return siteRepository.save(siteEntity);
-
+        siteEntity = siteRepository.save(siteEntity);
+        partitionRepository.createPartitions(siteEntity.getId());
+        return siteEntity;
     }
 
 
     public ResponseBoolean startIndexing() {
-        if (isIndexingRunning.get()) {
+        if (!isIndexingRunning.compareAndSet(false, true)) {
             log.info("Индексация уже запущена");
             return new ResponseError(false, "Индексация уже запущена");
         }
-        PageCrawlerTask.clearVisitedSite();
-        log.info("Очискта списка посещенных сайтов");
-        isIndexingRunning.set(true);
         log.info("status true");
-        forkJoinPool = new ForkJoinPool();
-        if (forkJoinPool.getActiveThreadCount() != 0) {
-            isIndexingRunning.set(false);
-        }
-        deleteAllSiteDate();
-        sitesList.getSites().forEach(site -> {
-            SiteEntity siteEntity = createEntryInTableSite(site);
-            PageCrawlerTask pageCrawlerTask = new PageCrawlerTask(site.getUrl(), site.getUrl(), pageRepository, siteRepository, lemmaRepository, indexRepository, sitesList, siteEntity);
-            forkJoinPool.execute(pageCrawlerTask);
-        });
+        Map<SiteEntity, CrawlPipeline.CrawlMode> siteModes = prepareSites();
+        crawlPipeline = new CrawlPipeline(pageRepository, siteRepository, pageIndexer, frontierRepository, sitesList,
+                () -> isIndexingRunning.set(false));
+        crawlPipeline.start(siteModes);
 
         return new ResponseBoolean(true);
     }
@@ -109,317 +156,271 @@ public class IndexingSiteService {
             return new ResponseError(false, "Индексация не запущена");
         }
         log.info("Остновка индексации");
+        crawlPipeline.stop();
         isIndexingRunning.set(false);
         log.info("status false");
-        forkJoinPool.shutdown();
         return new ResponseBoolean(true);
     }
 
-    public ResponseBoolean indexPage(String urlPage) {
-        Page page = new Page();
-        String validUrl = URLDecoder.decode(urlPage.substring(urlPage.indexOf("h")), StandardCharsets.UTF_8);
-        try {
-            Connection.Response response = Jsoup.connect(validUrl).userAgent(sitesList.getUserAgent()).referrer(sitesList.getReferrer()).timeout(10_000).ignoreContentType(true).execute();
-            String baseUrl = getBaseUrl(validUrl);
-            SiteEntity siteEntity = new SiteEntity();
-            boolean siteFound = false;
-            for (Site site : sitesList.getSites()) {
-                boolean correctSite = validUrl.startsWith(site.getUrl());
-                if (correctSite) {
-                    if (siteRepository.findByUrl(site.getUrl()) == null) {
-                        log.info("Если сайта {} нет в базе, то он создается", baseUrl);
-                        createEntryInTableSite(site);
-                        log.info("Создание сайта {}", baseUrl);
-                        siteEntity = siteRepository.findByUrl(site.getUrl());
-                        siteFound = true;
-                        break;
-                    } else {
-                        log.info("Сайт {} есть в списке конфигураций", baseUrl);
-                        siteEntity = siteRepository.findByUrl(site.getUrl());
-                        siteFound = true;
-                        break;
-                    }
-                }
-            }
+    public ResponseBoolean getPipelineStatistics() {
+        CrawlPipeline pipeline = crawlPipeline;
+        if (pipeline == null) {
+            return new ResponseError(false, "Индексация не запускалась");
+        }
+        return new ResponsePipeline(true, pipeline.getStatistics());
+    }
 
-            if (!siteFound) {
-                log.info("Сайт {} не найден в списке конфигураций", baseUrl);
-                return new ResponseError(false, "Данная страница находится за пределами сайтов, указанных в конфигурационном файле");
+    /**
+     * @return сайт из конфигурации, которому принадлежит страница, или null
+     */
+    public Site findConfiguredSite(String url) {
+        for (Site site : sitesList.getSites()) {
+            if (url.startsWith(site.getUrl())) {
+                return site;
             }
-            if (pageRepository.existsByPath(response.url().getPath())) {
-                log.info("Эта страница уже есть в базе. Удаление старой страницы");
-                pageRepository.deleteByPath((response.url().getPath()));
-            }
-            page.setContent(response.body().replace("\u0000", ""));
-            page.setSite(siteEntity);
-            page.setCode(response.statusCode());
-            page.setPath(response.url().getPath());
-            log.info("Сохранение страницы {}", page.getPath());
-            pageRepository.save(page);
-            log.info("Сохранение лемм и индексов");
-            getLemmasAndIndex(page, siteEntity);
-            siteEntity.setStatus(StatusIndexingSite.INDEXED);
-            siteRepository.save(siteEntity);
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return new ResponseBoolean(true);
+        return null;
+    }
+
+    /**
+     * Загружает и разбирает страницу для фоновой индексации ({@link PageIndexJobService}).
+     * Сайт создается в базе, если его еще нет. Страница, которая уже есть в базе,
+     * получает ее id и будет обновлена по разнице лемм.
+     */
+    public PageLemmas fetchPage(String url, Site site) throws IOException {
+        Connection.Response response = Jsoup.connect(url).userAgent(sitesList.getUserAgent()).referrer(sitesList.getReferrer()).timeout(10_000)
+                .ignoreContentType(true).maxBodySize(sitesList.getMaxBodySize()).execute();
+        SiteEntity siteEntity = findOrCreateSite(site);
+        Page page = new Page();
+        PageVersion previous = pageRepository.findFirstByPathAndSite(response.url().getPath(), siteEntity);
+        if (previous != null) {
+            log.info("Страница {} уже есть в базе, обновление индекса", url);
+            page.setId(previous.getId());
+        }
+        page.setContent(response.bodyAsBytes());
+        HtmlExtractor.ExtractedHtml html = HtmlExtractor.extract(page.getContent(), response.charset(), url);
+        page.setCharset(html.charset());
+        page.setTitle(html.title());
+        page.setText(html.text());
+        page.setEtag(response.header("ETag"));
+        page.setLastModified(response.header("Last-Modified"));
+        page.setContentHash(ContentHash.of(page.getContent()));
+        page.setSite(siteEntity);
+        page.setCode(response.statusCode());
+        page.setPath(response.url().getPath());
+        Map<String, TokenPositions> positions = LemmaFinder.getInstance().collectLemmaPositions(page.getText());
+        return new PageLemmas(page, positions, previous != null);
+    }
+
+    /**
+     * Сбрасывает частоты лемм после записи страниц сайта и обновляет время статуса,
+     * чтобы сегмент поискового индекса сайта считался устаревшим.
+     * Во время обхода сайтов статус не меняется.
+     */
+    public void markPagesIndexed(SiteEntity siteEntity) {
+        pageIndexer.flushFrequencies(siteEntity);
+        SiteEntity current = siteRepository.findById(siteEntity.getId()).orElse(null);
+        if (current == null) {
+            return;
+        }
+        if (!isIndexingRunning.get()) {
+            current.setStatus(StatusIndexingSite.INDEXED);
+        }
+        current.setStatusTime(Instant.now());
+        siteRepository.save(current);
+    }
+
+    private synchronized SiteEntity findOrCreateSite(Site site) {
+        SiteEntity siteEntity = siteRepository.findByUrl(site.getUrl());
+        if (siteEntity == null) {
+            log.info("Создание сайта {}", site.getUrl());
+            siteEntity = createEntryInTableSite(site);
+        }
+        return siteEntity;
     }
 
     public ResponseBoolean search(String query, String siteUrl, Integer offset, Integer limit) {
         if (query.isEmpty()) {
             return new ResponseError(false, "Задан пустой поисковый запрос");
         }
-        SiteEntity siteEntity = new SiteEntity();
-        List<SearchResult> searchResults = new ArrayList<>();
+        Set<String> queryLemmas;
+        try {
+            queryLemmas = LemmaFinder.getInstance().getLemmaSet(query);
+        } catch (IOException e) {
+            log.error("Не удалось загрузить морфологию", e);
+            return new ResponseError(false, "Ошибка поиска");
+        }
+        int currentOffset = offset == null ? 0 : offset;
+        int currentLimit = limit == null ? 20 : limit;
+        boolean allSites = siteUrl == null || siteUrl.isEmpty();
+        SearchCacheService.Key cacheKey = new SearchCacheService.Key(queryLemmas.stream().sorted().toList(),
+                allSites ? "" : siteUrl, currentOffset, currentLimit);
+        ResponseBoolean cachedResponse = searchCacheService.get(cacheKey);
+        if (cachedResponse != null) {
+            return cachedResponse;
+        }
+        long sitesGeneration = allSites ? searchIndexService.sitesGeneration() : -1;
+        Map<Integer, Long> generations = new HashMap<>();
+        List<SiteEntity> searchedSites = new ArrayList<>();
 
-        if (siteUrl == null || siteUrl.isEmpty()) {
+        if (allSites) {
             log.info("Начинается поиск по всем страницам");
             for (Site site : sitesList.getSites()) {
-                siteEntity = siteRepository.findByUrl(site.getUrl());
-                Set<Lemma> filteredLemmas = getRelevantLemma(query, siteEntity);
+                SiteEntity siteEntity = siteRepository.findByUrl(site.getUrl());
                 if (siteEntity != null) {
-                    singleSiteSearch(filteredLemmas, searchResults, query, siteEntity);
+                    searchedSites.add(siteEntity);
                 }
             }
         } else {
             log.info("Начинается поиск по {}", siteUrl);
-            siteEntity = siteRepository.findByUrl(siteUrl);
+            SiteEntity siteEntity = siteRepository.findByUrl(siteUrl);
             if (siteEntity == null) {
                 return new ResponseError(false, "Указанный сайт не найден");
             }
-            Set<Lemma> filteredLemmas = getRelevantLemma(query, siteEntity);
-            if (filteredLemmas.isEmpty()) {
-                return new ResponseError(false, "Ничего не найдено");
-            }
-            singleSiteSearch(filteredLemmas, searchResults, query, siteEntity);
+            searchedSites.add(siteEntity);
         }
-
-        int currentOffset = offset == null ? 0 : offset;
-        int currentLimit = limit == null ? 20 : limit;
-
-        List<SearchResult> finalSearchResult = searchResults.stream()
-                .skip(currentOffset)
-                .limit(currentLimit)
-                .toList();
-        if (finalSearchResult.isEmpty()) {
-            return new ResponseError(false, "Ничего не найдено");
+        for (SiteEntity siteEntity : searchedSites) {
+            generations.put(siteEntity.getId(), searchIndexService.generation(siteEntity.getId()));
         }
-        return new ResponseSearch(true, searchResults.size(), finalSearchResult);
-    }
 
-    private void singleSiteSearch(Set<Lemma> filteredLemmas, List<SearchResult> searchResults, String query, SiteEntity siteEntity) {
-        if (filteredLemmas == null || filteredLemmas.isEmpty()) {
-            return;
+        int capacity = (int) Math.min(Integer.MAX_VALUE, (long) currentOffset + currentLimit);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sitesList.getSearchTimeout());
+        List<CompletableFuture<SiteHits>> siteSearches = new ArrayList<>();
+        for (int siteSlot = 0; siteSlot < searchedSites.size(); siteSlot++) {
+            SiteEntity siteEntity = searchedSites.get(siteSlot);
+            int slot = siteSlot;
+            siteSearches.add(CompletableFuture.supplyAsync(
+                    () -> singleSiteSearch(queryLemmas, siteEntity, slot, capacity, deadline), searchExecutor));
         }
-        List<Index> index = indexRepository.findByLemma(filteredLemmas.iterator().next());
-        Set<Page> resultPages = index.stream()
-                .map(Index::getPage)
-                .collect(Collectors.toSet());
-        int count = 0;
-        for (Lemma lemma : filteredLemmas) {
-            if (count >= 1) {
-                index = indexRepository.findByLemma(lemma);
-                Set<Page> currentPage = index.stream()
-                        .map(Index::getPage)
-                        .collect(Collectors.toSet());
-                if (resultPages.isEmpty()) {
-                    break;
-                }
-                resultPages.retainAll(currentPage);
+        try {
+            CompletableFuture.allOf(siteSearches.toArray(new CompletableFuture[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Поиск по части сайтов не уложился в {} мс", sitesList.getSearchTimeout());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                log.warn("Поиск по части сайтов не уложился в {} мс", sitesList.getSearchTimeout());
+            } else {
+                log.error("Ошибка поиска по сайту", e.getCause());
             }
-            count++;
-        }
-
-        Map<Page, Float> absoluteRelevancePage = calculateAbsoluteRelevance(resultPages, filteredLemmas);
-        float maxAbsoluteRelevance = absoluteRelevancePage.values().stream()
-                .max(Float::compare).orElse(1.0f);
-
-        List<Page> sortedPages = resultPages.stream()
-                .sorted((p1, p2) -> Float.compare(
-                        absoluteRelevancePage.get(p2) / maxAbsoluteRelevance,
-                        absoluteRelevancePage.get(p1) / maxAbsoluteRelevance
-                ))
-                .toList();
-
-        for (Page page : sortedPages) {
-            String siteName = siteEntity.getName();
-            String uri = page.getPath();
-            String title = getTitle(page);
-            String snippet = getSnippet(page, query);
-            float relevance = absoluteRelevancePage.get(page) / maxAbsoluteRelevance;
-            searchResults.add(new SearchResult(siteEntity.getUrl(), siteName, uri, title, snippet, relevance));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseError(false, "Поиск прерван");
         }
-    }
-
 
-    public Set<Lemma> getRelevantLemma(String text, SiteEntity siteEntity) {
-        double percentageOfOccurrence = 1.0;
-        Set<Lemma> filteredLemmas = new TreeSet<>(Comparator.comparing(Lemma::getFrequency).thenComparing(Lemma::getLemma));
-        try {
-            LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-            Set<String> lemmas = lemmaFinder.getLemmaSet(text);
-            Integer countPageBySite = pageRepository.countPageBySite(siteEntity);
-
-            for (String l : lemmas) {
-                Lemma lemma = lemmaRepository.findByLemmaAndSite(l, siteEntity);
-                if (lemma == null) {
-                    continue;
-                }
-                double count = countPageBySite * percentageOfOccurrence;
-                if (lemma.getFrequency() <= count) {
-                    filteredLemmas.add(lemma);
-                }
+        TopHits topHits = new TopHits(capacity);
+        float maxAbsoluteRelevance = 0;
+        boolean partial = false;
+        for (CompletableFuture<SiteHits> siteSearch : siteSearches) {
+            if (!siteSearch.isDone() || siteSearch.isCompletedExceptionally()) {
+                // еще не начатый поиск не запустится, начатый сам прервется по сроку
+                siteSearch.cancel(false);
+                partial = true;
+                continue;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            SiteHits siteHits = siteSearch.join();
+            topHits.merge(siteHits.topHits());
+            maxAbsoluteRelevance = Math.max(maxAbsoluteRelevance, siteHits.maxAbsoluteRelevance());
         }
-        return filteredLemmas;
-    }
 
-    public Map<Page, Float> calculateAbsoluteRelevance(Set<Page> resultPages, Set<Lemma> filteredLemma) {
-        Map<Page, Float> absoluteRelevancePage = new HashMap<>();
-        List<Index> indexList = indexRepository.findByPageInAndLemmaIn(resultPages, filteredLemma);
-        Map<Page, List<Index>> pageToIndex = indexList.stream()
-                .collect(Collectors.groupingBy(Index::getPage));
-        for (Page page : resultPages) {
-            List<Index> pageIndex = pageToIndex.getOrDefault(page, Collections.emptyList());
-            float absoluteRelevance = (float) pageIndex.stream()
-                    .mapToDouble(Index::getRank)
-                    .sum();
-            absoluteRelevancePage.put(page, absoluteRelevance);
+        List<TopHits.Hit> pageHits = topHits.sorted().stream()
+                .skip(currentOffset)
+                .toList();
+        ResponseBoolean response = pageHits.isEmpty()
+                ? new ResponseError(false, "Ничего не найдено")
+                : new ResponseSearch(true, (int) topHits.total(),
+                toSearchResults(pageHits, searchedSites, queryLemmas, maxAbsoluteRelevance), partial);
+        if (!partial) {
+            searchCacheService.put(cacheKey, response, generations, sitesGeneration);
         }
-
-        return absoluteRelevancePage;
+        return response;
     }
 
-
-    public void getLemmasAndIndex(Page page, SiteEntity siteEntity) throws IOException {
-        LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-        Map<String, Integer> allLem = lemmaFinder.collectLemmas(page.getContent());
-        for (Map.Entry<String, Integer> entry : allLem.entrySet()) {
-            String lemmaText = entry.getKey();
-            int countLemma = entry.getValue();
-            Lemma lemma = lemmaRepository.findByLemmaAndSite(lemmaText, siteEntity);
-            if (lemma == null) {
-                lemma = new Lemma();
-                lemma.setLemma(lemmaText);
-                lemma.setSite(siteEntity);
-                lemma.setFrequency(1);
-            } else {
-                lemma.setFrequency(lemma.getFrequency() + 1);
-            }
-            lemmaRepository.save(lemma);
-            Index index = new Index();
-            index.setPage(page);
-            index.setLemma(lemma);
-            index.setRank(countLemma);
-            indexRepository.save(index);
-        }
+    public ResponseBoolean getSearchCacheStatistics() {
+        return searchCacheService.getStatistics();
     }
 
-
-    public String getBaseUrl(String url) {
-        int protocolIndex = url.indexOf("://");
-        int start = (protocolIndex != -1) ? protocolIndex + 3 : 0;
-        int end = url.length();
-        for (char c : new char[]{'/', '?', '#'}) {
-            int index = url.indexOf(c, start);
-            if (index != -1 && index < end) {
-                end = index;
-            }
-        }
-        String baseUrl = url.substring(0, end);
-        return baseUrl;
+    /**
+     * Лучшие результаты одного сайта с абсолютной релевантностью
+     * и ее максимум по всем найденным страницам сайта.
+     */
+    private record SiteHits(TopHits topHits, float maxAbsoluteRelevance) {
     }
 
-    private String getTitle(Page page) {
-        String title = "";
-        try {
-            Document doc = Jsoup.parse(page.getContent());
-            title = doc.title();
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Из индекса в памяти берутся только id страниц и релевантность,
+     * в кучу лучших результатов попадают не больше offset + limit страниц.
+     * Нормализация общая для всех сайтов и делается после слияния.
+     * После срока deadline поиск по сайту прерывается, чтобы не занимать поток.
+     */
+    private SiteHits singleSiteSearch(Set<String> queryLemmas, SiteEntity siteEntity, int siteSlot, int capacity, long deadline) {
+        TopHits topHits = new TopHits(capacity);
+        List<String> filteredLemmas = getRelevantLemma(queryLemmas, siteEntity);
+        if (filteredLemmas.isEmpty()) {
+            return new SiteHits(topHits, 0);
         }
-        return title;
+        SearchIndexService.Hits siteHits = searchIndexService.search(siteEntity.getId(), filteredLemmas, deadline);
+        float maxAbsoluteRelevance = 0;
+        for (int i = 0; i < siteHits.size(); i++) {
+            float relevance = siteHits.relevance()[i];
+            maxAbsoluteRelevance = Math.max(maxAbsoluteRelevance, relevance);
+            topHits.offer(siteSlot, siteHits.pageIds()[i], relevance);
+        }
+        return new SiteHits(topHits, maxAbsoluteRelevance);
     }
 
-    private String getSnippet(Page page, String query) {
-        String html = page.getContent();
-        String text = Jsoup.parse(html).text();
-        String[] words = query.strip().split("\\s+");
-        Pattern pattern = Pattern.compile(query, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-        Matcher matcher = pattern.matcher(text);
-        int flag = 0;
-        int length = text.length();
-        String result = "";
-        if (matcher.find()) {
-            result = findMatchCondition(matcher, length, text, result);
-        } else {
-            flag = -1;
+    /**
+     * Страницы, заголовки и сниппеты загружаются только для отдаваемой страницы выдачи,
+     * позиции лемм запроса на этих страницах - одним запросом.
+     */
+    private List<SearchResult> toSearchResults(List<TopHits.Hit> hits, List<SiteEntity> searchedSites, Set<String> queryLemmas,
+                                               float maxAbsoluteRelevance) {
+        List<Integer> pageIds = hits.stream().map(TopHits.Hit::pageId).toList();
+        Map<Integer, Page> pages = new HashMap<>();
+        for (Page page : pageRepository.findAllById(pageIds)) {
+            pages.put(page.getId(), page);
         }
-
-        if (flag == -1) {
-            for (String s : words) {
-                pattern = Pattern.compile(s, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-                matcher = pattern.matcher(text);
-                if (matcher.find()) {
-                    result = findMatchCondition(matcher, length, text, result);
-                    break;
-                }
-            }
-            int a = 1;
-            String newWords = "";
-            if (result.isEmpty()) {
-                for (String s : words) {
-
-                    for (int i = 0; i <= s.length(); i++) {
-                        if (a <= 3) {
-                            newWords = s.substring(0, s.length() - a);
-                            pattern = Pattern.compile(newWords, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-                            matcher = pattern.matcher(text);
-                            if (matcher.find()) {
-                                result = findMatchCondition(matcher, length, text, result);
-                                break;
-                            }
-                            a++;
-                        } else {
-                            break;
-                        }
-                    }
-                    result = boldFont(newWords, pattern, matcher, result);
-                }
-                return result;
+        Map<Integer, PageText> texts = pageContentRepository.findTexts(pageIds);
+        Map<Integer, Map<String, int[]>> positions = lemmaIndexJdbcRepository.findPositions(pageIds, queryLemmas);
+        List<SearchResult> searchResults = new ArrayList<>();
+        for (TopHits.Hit hit : hits) {
+            Page page = pages.get(hit.pageId());
+            if (page == null) {
+                continue;
             }
+            SiteEntity siteEntity = searchedSites.get(hit.source());
+            PageText text = texts.getOrDefault(page.getId(), new PageText(null, null));
+            searchResults.add(new SearchResult(siteEntity.getUrl(), siteEntity.getName(), page.getPath(),
+                    getTitle(text), getSnippet(text, positions.getOrDefault(page.getId(), Map.of())),
+                    maxAbsoluteRelevance == 0 ? 0 : hit.score() / maxAbsoluteRelevance));
         }
+        return searchResults;
+    }
 
-        for (String s : words) {
-            result = boldFont(s, pattern, matcher, result);
-        }
-        return result;
+    /**
+     * Оставляет леммы запроса, которые есть на сайте и встречаются не слишком часто,
+     * в порядке возрастания числа страниц.
+     */
+    public List<String> getRelevantLemma(Set<String> queryLemmas, SiteEntity siteEntity) {
+        double percentageOfOccurrence = 1.0;
+        double maxFrequency = searchIndexService.pageCount(siteEntity.getId()) * percentageOfOccurrence;
+        return queryLemmas.stream()
+                .filter(lemma -> {
+                    int frequency = searchIndexService.documentFrequency(siteEntity.getId(), lemma);
+                    return frequency > 0 && frequency <= maxFrequency;
+                })
+                .sorted(Comparator.comparingInt((String lemma) -> searchIndexService.documentFrequency(siteEntity.getId(), lemma))
+                        .thenComparing(Comparator.naturalOrder()))
+                .toList();
     }
 
-    private String boldFont(String str, Pattern pattern, Matcher matcher, String result) {
-        String escapedWord = Pattern.quote(str);
-        pattern = Pattern.compile(escapedWord, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-        matcher = pattern.matcher(result);
-        result = matcher.replaceAll("<b>$0</b>");
-        return result;
+
+    private String getTitle(PageText pageText) {
+        return pageText.title() == null ? "" : pageText.title();
     }
 
-    private String findMatchCondition(Matcher matcher, int length, String text, String result) {
-        int startIndex = matcher.start();
-        int lastIndex = matcher.end();
-        int difference = length - lastIndex;
-        if ((lastIndex + 300) < length) {
-            int endStr = lastIndex + 300;
-            String str = text.substring(startIndex, endStr);
-            int firstSpace = str.lastIndexOf(" ", endStr);
-            result = str.substring(0, firstSpace) + " ...";
-            return result;
-        } else {
-            result = text.substring(startIndex, lastIndex + difference);
-            return result;
-        }
+    private String getSnippet(PageText pageText, Map<String, int[]> lemmaPositions) {
+        String text = pageText.text() == null ? "" : pageText.text();
+        return SnippetBuilder.build(text, new ArrayList<>(lemmaPositions.values()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.repository.LemmaIndexJdbcRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Накопитель частот лемм по сайтам. Потоки индексации только увеличивают
+ * счетчики в памяти, а в базу частоты уходят атомарными инкрементами:
+ * периодически и по завершении индексации сайта.
+ * Счетчики - {@link LongAdder}: инкремент не создает объектов и не упирается
+ * в одну ячейку на частых леммах. При сбросе из счетчика вычитается
+ * прочитанная сумма, поэтому параллельные инкременты не теряются.
+ * Сбросы одного сайта идут по очереди (блокировка на его счетчиках): иначе
+ * два параллельных сброса записали бы одну и ту же разницу дважды.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LemmaFrequencyCounter {
+
+    private final LemmaIndexJdbcRepository lemmaIndexJdbcRepository;
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, LongAdder>> pendingFrequencies = new ConcurrentHashMap<>();
+
+    public void increment(int siteId, Collection<String> lemmas) {
+        add(siteId, lemmas, 1);
+    }
+
+    public void decrement(int siteId, Collection<String> lemmas) {
+        add(siteId, lemmas, -1);
+    }
+
+    private void add(int siteId, Collection<String> lemmas, int delta) {
+        if (lemmas.isEmpty()) {
+            return;
+        }
+        ConcurrentHashMap<String, LongAdder> siteFrequencies = pendingFrequencies.computeIfAbsent(siteId, k -> new ConcurrentHashMap<>());
+        for (String lemma : lemmas) {
+            counter(siteFrequencies, lemma).add(delta);
+        }
+    }
+
+    private static LongAdder counter(ConcurrentHashMap<String, LongAdder> siteFrequencies, String lemma) {
+        LongAdder counter = siteFrequencies.get(lemma);
+        return counter != null ? counter : siteFrequencies.computeIfAbsent(lemma, k -> new LongAdder());
+    }
+
+    public void flush(int siteId) {
+        ConcurrentHashMap<String, LongAdder> siteFrequencies = pendingFrequencies.get(siteId);
+        if (siteFrequencies == null || siteFrequencies.isEmpty()) {
+            return;
+        }
+        synchronized (siteFrequencies) {
+            flush(siteId, siteFrequencies);
+        }
+    }
+
+    private void flush(int siteId, ConcurrentHashMap<String, LongAdder> siteFrequencies) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : siteFrequencies.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count != 0) {
+                entry.getValue().add(-count);
+                frequencies.put(entry.getKey(), (int) count);
+            }
+        }
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        try {
+            lemmaIndexJdbcRepository.addFrequencies(siteId, frequencies);
+        } catch (RuntimeException e) {
+            log.error("Не удалось сохранить частоты лемм сайта {}", siteId, e);
+            frequencies.forEach((lemma, count) -> counter(siteFrequencies, lemma).add(count));
+        }
+    }
+
+    /**
+     * Забывает несохраненные частоты сайта, данные которого удаляются.
+     */
+    public void removeSite(int siteId) {
+        pendingFrequencies.remove(siteId);
+    }
+
+    @Scheduled(fixedDelayString = "${indexing-settings.frequency-flush-interval:5000}")
+    public void flushAll() {
+        for (Integer siteId : pendingFrequencies.keySet()) {
+            flush(siteId);
+        }
+    }
+}
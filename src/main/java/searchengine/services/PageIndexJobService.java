@@ -0,0 +1,315 @@
+package searchengine.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.response.ResponseBoolean;
+import searchengine.dto.statistics.response.ResponseError;
+import searchengine.dto.statistics.response.ResponsePageIndexJob;
+import searchengine.dto.statistics.response.ResponsePageIndexJobs;
+import searchengine.model.PageIndexJobStatus;
+import searchengine.model.SiteEntity;
+import searchengine.util.PageLemmas;
+import searchengine.util.PipelineStage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * Фоновая индексация отдельных страниц (/api/indexPage). Запрос только ставит
+ * задачу в ограниченную очередь и сразу возвращает ее id. Повторные запросы
+ * на страницу, которая еще ждет в очереди, склеиваются в одну задачу. Запрос
+ * на уже загружаемую страницу помечает ее задачу для повторной загрузки после
+ * записи: две загрузки одной страницы никогда не идут параллельно, в том
+ * числе когда разные URL после редиректов приводят к одной записи в page.
+ * Страницы загружают page-index-threads потоков, а записываются они пачками
+ * в одной транзакции, как при обходе сайта.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PageIndexJobService {
+
+    private final IndexingSiteService indexingSiteService;
+    private final PageIndexer pageIndexer;
+    private final SitesList sitesList;
+    /**
+     * Задачи в очереди или в работе по ключу страницы ({@link #pageKey}). Задача,
+     * загрузившая страницу по другому пути, занимает и его ключ до записи.
+     * Все переходы состояния задачи выполняются под блокировкой ключа (compute).
+     */
+    private final Map<String, Job> activeJobs = new ConcurrentHashMap<>();
+    private Cache<String, Job> jobs;
+    private PipelineStage<Job> fetchStage;
+    private PipelineStage<FetchedJob> persistStage;
+
+    private static final class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final String url;
+        private final String key;
+        private final Site site;
+        /**
+         * Ключ фактически загруженной страницы, если он отличается от key.
+         */
+        private String fetchedKey;
+        private volatile PageIndexJobStatus status = PageIndexJobStatus.QUEUED;
+        private volatile String error;
+        /**
+         * Страницу запросили снова во время загрузки или записи.
+         */
+        private boolean refetch;
+
+        private Job(String url, String key, Site site) {
+            this.url = url;
+            this.key = key;
+            this.site = site;
+        }
+
+        private void fail(String error) {
+            this.error = error;
+            this.status = PageIndexJobStatus.FAILED;
+        }
+    }
+
+    private record FetchedJob(Job job, PageLemmas pageLemmas) {
+    }
+
+    @PostConstruct
+    public void start() {
+        jobs = Caffeine.newBuilder().maximumSize(sitesList.getPageIndexJobHistory()).build();
+        int threads = Math.max(1, sitesList.getPageIndexThreads());
+        fetchStage = new PipelineStage<>("page-fetch", Executors.newFixedThreadPool(threads, PipelineStage.namedThreads("page-fetch")),
+                threads, sitesList.getPageIndexQueueCapacity(), 1, batch -> batch.forEach(this::fetch));
+        persistStage = new PipelineStage<>("page-persist", Executors.newSingleThreadExecutor(PipelineStage.namedThreads("page-persist")),
+                1, sitesList.getQueueCapacity(), sitesList.getPageIndexBatchSize(), this::persist);
+        fetchStage.start();
+        persistStage.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        fetchStage.shutdown();
+        persistStage.shutdown();
+    }
+
+    /**
+     * @param urlPage тело запроса: URL страницы, возможно в виде url=... из формы
+     */
+    public ResponseBoolean submit(String urlPage) {
+        int start = urlPage.indexOf("h");
+        if (start < 0) {
+            return new ResponseError(false, "Не указан адрес страницы");
+        }
+        Job job = enqueue(URLDecoder.decode(urlPage.substring(start), StandardCharsets.UTF_8).trim());
+        if (job.status == PageIndexJobStatus.FAILED) {
+            return new ResponseError(false, job.error);
+        }
+        return toResponse(job);
+    }
+
+    public ResponsePageIndexJobs submitAll(List<String> urls) {
+        List<ResponsePageIndexJob> responses = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            responses.add(toResponse(enqueue(url.trim())));
+        }
+        return new ResponsePageIndexJobs(true, responses);
+    }
+
+    public ResponseBoolean getStatus(String jobId) {
+        Job job = jobs.getIfPresent(jobId);
+        if (job == null) {
+            return new ResponseError(false, "Задача индексации страницы не найдена");
+        }
+        return toResponse(job);
+    }
+
+    private Job enqueue(String url) {
+        Site site = indexingSiteService.findConfiguredSite(url);
+        if (site == null) {
+            return register(failed(url, "Данная страница находится за пределами сайтов, указанных в конфигурационном файле"));
+        }
+        String key = pageKey(site, requestPath(url));
+        Job created = new Job(url, key, site);
+        Job job = activeJobs.compute(key, (k, active) -> {
+            if (active == null) {
+                return created;
+            }
+            if (active.status == PageIndexJobStatus.RUNNING) {
+                active.refetch = true;
+            }
+            return active;
+        });
+        if (job != created) {
+            return job;
+        }
+        register(created);
+        offer(created);
+        return created;
+    }
+
+    private void offer(Job job) {
+        if (!fetchStage.offer(job)) {
+            activeJobs.remove(job.key, job);
+            log.warn("Очередь индексации страниц переполнена, {} отклонена", job.url);
+            job.fail("Очередь индексации страниц переполнена, повторите запрос позже");
+        }
+    }
+
+    /**
+     * Завершает задачу или, если страницу запросили снова, ставит ее в очередь еще раз.
+     */
+    private void complete(Job job, String error) {
+        if (job.fetchedKey != null) {
+            activeJobs.remove(job.fetchedKey, job);
+            job.fetchedKey = null;
+        }
+        boolean[] requeue = new boolean[1];
+        activeJobs.compute(job.key, (k, active) -> {
+            if (job.refetch) {
+                job.refetch = false;
+                job.error = null;
+                job.status = PageIndexJobStatus.QUEUED;
+                requeue[0] = true;
+                return job;
+            }
+            if (error != null) {
+                job.fail(error);
+            } else {
+                job.status = PageIndexJobStatus.DONE;
+            }
+            return null;
+        });
+        if (requeue[0]) {
+            offer(job);
+        }
+    }
+
+    private Job register(Job job) {
+        jobs.put(job.id, job);
+        return job;
+    }
+
+    /**
+     * Ключ страницы совпадает с ее уникальным ключом в page: сайт и путь.
+     */
+    private static String pageKey(Site site, String path) {
+        return site.getUrl() + " " + path;
+    }
+
+    private static String requestPath(String url) {
+        try {
+            String path = new URI(url).getRawPath();
+            return path == null || path.isEmpty() ? "/" : path;
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private static Job failed(String url, String error) {
+        Job job = new Job(url, null, null);
+        job.fail(error);
+        return job;
+    }
+
+    private void fetch(Job job) {
+        activeJobs.computeIfPresent(job.key, (k, active) -> {
+            active.status = PageIndexJobStatus.RUNNING;
+            return active;
+        });
+        try {
+            PageLemmas pageLemmas = indexingSiteService.fetchPage(job.url, job.site);
+            if (claimFetchedPage(job, pageLemmas.page().getPath())) {
+                persistStage.put(new FetchedJob(job, pageLemmas));
+            } else {
+                log.info("Страница {} уже индексируется другой задачей", job.url);
+                complete(job, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete(job, "Индексация остановлена");
+        } catch (Exception e) {
+            log.error("Ошибка индексации страницы {}", job.url, e);
+            complete(job, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+    }
+
+    /**
+     * Занимает ключ пути, по которому страница фактически загружена (например,
+     * после редиректа). Если этот путь уже занят другой задачей, страница не
+     * записывается: ее запишет та задача, а загружаемая сейчас загрузится снова.
+     *
+     * @return true, если страницу можно записывать
+     */
+    private boolean claimFetchedPage(Job job, String path) {
+        String key = pageKey(job.site, path);
+        if (key.equals(job.key)) {
+            return true;
+        }
+        Job owner = activeJobs.compute(key, (k, active) -> {
+            if (active == null) {
+                return job;
+            }
+            if (active.status == PageIndexJobStatus.RUNNING) {
+                active.refetch = true;
+            }
+            return active;
+        });
+        if (owner != job) {
+            return false;
+        }
+        job.fetchedKey = key;
+        return true;
+    }
+
+    /**
+     * Пачка пишется одной транзакцией; если она не прошла, страницы
+     * сохраняются по одной, чтобы ошибка одной не помешала остальным.
+     * Новые страницы при этом вставляются заново ({@link PageIndexer#savePage}).
+     * Одна страница попадает в пачку не больше одного раза: следующая
+     * ее загрузка начинается только после завершения задачи.
+     */
+    private void persist(List<FetchedJob> batch) {
+        List<PageLemmas> pages = batch.stream().map(FetchedJob::pageLemmas).toList();
+        try {
+            pageIndexer.savePages(pages);
+            batch.forEach(fetchedJob -> complete(fetchedJob.job(), null));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сохранить пачку страниц, сохранение по одной", e);
+            for (FetchedJob fetchedJob : batch) {
+                try {
+                    pageIndexer.savePages(List.of(fetchedJob.pageLemmas()));
+                    complete(fetchedJob.job(), null);
+                } catch (RuntimeException ex) {
+                    log.error("Ошибка сохранения страницы {}", fetchedJob.job().url, ex);
+                    complete(fetchedJob.job(), "Ошибка сохранения страницы");
+                }
+            }
+        }
+        Map<Integer, SiteEntity> sites = new HashMap<>();
+        for (PageLemmas pageLemmas : pages) {
+            sites.putIfAbsent(pageLemmas.page().getSite().getId(), pageLemmas.page().getSite());
+        }
+        for (SiteEntity siteEntity : sites.values()) {
+            try {
+                indexingSiteService.markPagesIndexed(siteEntity);
+            } catch (RuntimeException e) {
+                log.error("Не удалось обновить статус сайта {}", siteEntity.getUrl(), e);
+            }
+        }
+    }
+
+    private static ResponsePageIndexJob toResponse(Job job) {
+        return new ResponsePageIndexJob(job.status != PageIndexJobStatus.FAILED, job.id, job.url, job.status, job.error);
+    }
+}
@@ -0,0 +1,135 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.model.Page;
+import searchengine.model.SiteEntity;
+import searchengine.repository.LemmaIndexJdbcRepository;
+import searchengine.repository.LemmaIndexJdbcRepository.IndexedLemma;
+import searchengine.repository.PageContentJdbcRepository;
+import searchengine.repository.PageRepository;
+import searchengine.util.PageLemmas;
+import searchengine.util.TokenPositions;
+
+import java.util.*;
+
+@Service
+@RequiredArgsConstructor
+public class PageIndexer {
+
+    private final PageRepository pageRepository;
+    private final LemmaIndexJdbcRepository lemmaIndexJdbcRepository;
+    private final PageContentJdbcRepository pageContentRepository;
+    private final LemmaFrequencyCounter lemmaFrequencyCounter;
+    private final SearchIndexService searchIndexService;
+
+    /**
+     * Сохраняет пачку страниц в одной транзакции. Страницы, найденные в базе
+     * при загрузке, обновляются по разнице лемм.
+     */
+    @Transactional
+    public void savePages(List<PageLemmas> pages) {
+        for (PageLemmas pageLemmas : pages) {
+            if (pageLemmas.existing()) {
+                updatePage(pageLemmas);
+            } else {
+                savePage(pageLemmas);
+            }
+        }
+    }
+
+    /**
+     * Вставляет новую страницу. Id, оставшийся от откаченной транзакции пачки,
+     * сбрасывается, иначе save выполнит merge и страница сохранится под другим id.
+     */
+    @Transactional
+    public void savePage(PageLemmas pageLemmas) {
+        Page page = pageLemmas.page();
+        page.setId(0);
+        pageRepository.save(page);
+        int siteId = page.getSite().getId();
+        saveContent(siteId, page);
+        if (pageLemmas.positions().isEmpty()) {
+            return;
+        }
+        Map<String, Integer> lemmas = pageLemmas.lemmas();
+        Map<String, Integer> lemmaIds = lemmaIndexJdbcRepository.findOrCreateLemmaIds(siteId, lemmas.keySet());
+        lemmaIndexJdbcRepository.insertIndexes(siteId, page.getId(), lemmaIds, pageLemmas.positions());
+        afterCommit(() -> {
+            lemmaFrequencyCounter.increment(siteId, lemmas.keySet());
+            searchIndexService.addPage(siteId, page.getId(), lemmas);
+        });
+    }
+
+    /**
+     * Обновляет существующую страницу: удаляет индексы пропавших лемм,
+     * добавляет новые и меняет rank и позиции у изменившихся. Частоты лемм
+     * уменьшаются и увеличиваются только на разницу.
+     */
+    @Transactional
+    public void updatePage(PageLemmas pageLemmas) {
+        Page page = pageLemmas.page();
+        pageRepository.save(page);
+        int siteId = page.getSite().getId();
+        saveContent(siteId, page);
+        Map<String, IndexedLemma> oldIndexes = lemmaIndexJdbcRepository.findIndexesByPage(siteId, page.getId());
+        int documentLength = pageLemmas.positions().values().stream().mapToInt(TokenPositions::size).sum();
+
+        List<String> removedLemmas = new ArrayList<>();
+        List<Integer> removedLemmaIds = new ArrayList<>();
+        Map<Integer, TokenPositions> changedIndexes = new HashMap<>();
+        Map<String, Integer> changedLemmas = new HashMap<>();
+        for (Map.Entry<String, IndexedLemma> entry : oldIndexes.entrySet()) {
+            TokenPositions positions = pageLemmas.positions().get(entry.getKey());
+            if (positions == null) {
+                removedLemmas.add(entry.getKey());
+                removedLemmaIds.add(entry.getValue().lemmaId());
+            } else if (positions.size() != entry.getValue().rank()
+                    || !Arrays.equals(positions.encode(), entry.getValue().positions())) {
+                changedIndexes.put(entry.getValue().lemmaId(), positions);
+                changedLemmas.put(entry.getKey(), positions.size());
+            }
+        }
+        Map<String, TokenPositions> addedPositions = new HashMap<>();
+        for (Map.Entry<String, TokenPositions> entry : pageLemmas.positions().entrySet()) {
+            if (!oldIndexes.containsKey(entry.getKey())) {
+                addedPositions.put(entry.getKey(), entry.getValue());
+                changedLemmas.put(entry.getKey(), entry.getValue().size());
+            }
+        }
+
+        lemmaIndexJdbcRepository.deleteIndexes(siteId, page.getId(), removedLemmaIds);
+        lemmaIndexJdbcRepository.updateIndexes(siteId, page.getId(), changedIndexes);
+        if (!addedPositions.isEmpty()) {
+            Map<String, Integer> lemmaIds = lemmaIndexJdbcRepository.findOrCreateLemmaIds(siteId, addedPositions.keySet());
+            lemmaIndexJdbcRepository.insertIndexes(siteId, page.getId(), lemmaIds, addedPositions);
+        }
+        afterCommit(() -> {
+            lemmaFrequencyCounter.increment(siteId, addedPositions.keySet());
+            lemmaFrequencyCounter.decrement(siteId, removedLemmas);
+            searchIndexService.updatePage(siteId, page.getId(), changedLemmas, removedLemmas, documentLength);
+        });
+    }
+
+    public void flushFrequencies(SiteEntity siteEntity) {
+        lemmaFrequencyCounter.flush(siteEntity.getId());
+    }
+
+    private void saveContent(int siteId, Page page) {
+        if (page.getContent() != null && page.getContent().length > 0 || page.getText() != null) {
+            pageContentRepository.save(siteId, page.getId(), page.getContent(), page.getCharset(), page.getTitle(), page.getText());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.stereotype.Service;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.response.ResponseBoolean;
+import searchengine.dto.statistics.response.ResponseSearch;
+import searchengine.dto.statistics.response.ResponseSearchCache;
+import searchengine.dto.statistics.response.SearchResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш ответов поиска (Caffeine, вытеснение W-TinyLFU по примерному объему).
+ * Ключ - отсортированный набор лемм запроса, сайт и окно выдачи.
+ * Вместе с ответом запоминаются номера поколений индекса затронутых сайтов;
+ * если индексатор с тех пор что-то закоммитил, запись считается устаревшей.
+ */
+@Service
+public class SearchCacheService {
+
+    private static final int ENTRY_OVERHEAD = 128;
+
+    public record Key(List<String> lemmas, String siteUrl, int offset, int limit) {
+    }
+
+    /**
+     * @param sitesGeneration поколение набора сайтов для поиска по всем сайтам, -1 для поиска по одному сайту
+     */
+    private record Entry(ResponseBoolean response, Map<Integer, Long> generations, long sitesGeneration) {
+    }
+
+    private final SearchIndexService searchIndexService;
+    private final Cache<Key, Entry> cache;
+    private final LongAdder staleEntries = new LongAdder();
+
+    public SearchCacheService(SearchIndexService searchIndexService, SitesList sitesList) {
+        this.searchIndexService = searchIndexService;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(sitesList.getSearchCacheMaxWeight())
+                .weigher(SearchCacheService::weigh)
+                .recordStats()
+                .build();
+    }
+
+    public ResponseBoolean get(Key key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!isFresh(entry)) {
+            cache.asMap().remove(key, entry);
+            staleEntries.increment();
+            return null;
+        }
+        return entry.response();
+    }
+
+    /**
+     * @param generations поколения индексов сайтов, снятые до начала поиска
+     */
+    public void put(Key key, ResponseBoolean response, Map<Integer, Long> generations, long sitesGeneration) {
+        cache.put(key, new Entry(response, Map.copyOf(generations), sitesGeneration));
+    }
+
+    public ResponseSearchCache getStatistics() {
+        CacheStats stats = cache.stats();
+        long stale = staleEntries.sum();
+        long hits = stats.hitCount() - stale;
+        long misses = stats.missCount() + stale;
+        double hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        return new ResponseSearchCache(true, hits, misses, stats.evictionCount(), stale, hitRate, cache.estimatedSize());
+    }
+
+    private boolean isFresh(Entry entry) {
+        if (entry.sitesGeneration() != -1 && entry.sitesGeneration() != searchIndexService.sitesGeneration()) {
+            return false;
+        }
+        for (Map.Entry<Integer, Long> generation : entry.generations().entrySet()) {
+            if (searchIndexService.generation(generation.getKey()) != generation.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int weigh(Key key, Entry entry) {
+        long weight = ENTRY_OVERHEAD;
+        for (String lemma : key.lemmas()) {
+            weight += 2L * lemma.length();
+        }
+        if (entry.response() instanceof ResponseSearch responseSearch && responseSearch.getData() != null) {
+            for (SearchResult result : responseSearch.getData()) {
+                weight += ENTRY_OVERHEAD + 2L * (length(result.site()) + length(result.siteName()) + length(result.uri())
+                        + length(result.title()) + length(result.snippet()));
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
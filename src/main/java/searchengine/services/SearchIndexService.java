@@ -0,0 +1,408 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.ScorerType;
+import searchengine.config.SitesList;
+import searchengine.model.SiteEntity;
+import searchengine.model.StatusIndexingSite;
+import searchengine.repository.LemmaIndexJdbcRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.util.Bm25Scorer;
+import searchengine.util.DocumentLengths;
+import searchengine.util.IndexSegment;
+import searchengine.util.PostingList;
+import searchengine.util.RankSumScorer;
+import searchengine.util.Scorer;
+import searchengine.util.SegmentManifest;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обратный индекс для поиска в памяти: для каждого сайта
+ * лемма -> отсортированные id страниц и rank. Строится при старте
+ * из таблиц lemma и index и обновляется индексатором после коммита,
+ * поэтому поиск обращается к базе только за страницами выдачи.
+ * Каждое изменение индекса сайта увеличивает его номер поколения,
+ * по которому кэш результатов поиска определяет устаревшие записи.
+ * Для оценки релевантности у каждого сайта хранятся длины его страниц
+ * (число лемм) и их сумма, частота леммы - длина ее списка страниц.
+ * Индекс каждого сайта периодически сбрасывается в файл сегмента
+ * ({@link IndexSegment}), списки страниц после этого читаются из отображенного
+ * файла, а не из кучи. При старте сегменты сайтов, которые с момента записи
+ * не индексировались, отображаются в память, остальные сайты читаются из базы.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SearchIndexService {
+
+    private final LemmaIndexJdbcRepository lemmaIndexJdbcRepository;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final SitesList sitesList;
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    private Scorer scorer;
+    private SegmentManifest manifest;
+    private final AtomicLong sitesGeneration = new AtomicLong();
+    /**
+     * Срок поиска проверяется раз в столько страниц.
+     */
+    private static final int DEADLINE_CHECK_MASK = 4096 - 1;
+
+    /**
+     * Страницы, содержащие все леммы запроса, и их оценка {@link Scorer}.
+     */
+    public record Hits(int[] pageIds, float[] relevance) {
+        static final Hits EMPTY = new Hits(new int[0], new float[0]);
+
+        public int size() {
+            return pageIds.length;
+        }
+    }
+
+    private static class SiteIndex {
+        private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+        /**
+         * Длины страниц с леммами; их число - N для оценки релевантности,
+         * одинаковое после загрузки из базы или сегмента и после обновлений.
+         */
+        private final DocumentLengths documentLengths = new DocumentLengths();
+        private final AtomicLong generation = new AtomicLong();
+        private volatile long writtenGeneration = -1;
+    }
+
+    @PostConstruct
+    public void load() {
+        scorer = sitesList.getScorer() == ScorerType.RANK_SUM
+                ? new RankSumScorer()
+                : new Bm25Scorer(sitesList.getBm25K1(), sitesList.getBm25B());
+        long start = System.currentTimeMillis();
+        loadManifest();
+        List<Integer> sitesToRebuild = new ArrayList<>();
+        for (SiteEntity siteEntity : siteRepository.findAll()) {
+            site(siteEntity.getId());
+            if (!loadSegment(siteEntity, pageRepository.countPageBySite(siteEntity))) {
+                sitesToRebuild.add(siteEntity.getId());
+            }
+        }
+        PostingLoader loader = new PostingLoader();
+        lemmaIndexJdbcRepository.forEachPosting(sitesToRebuild, loader);
+        loader.flush();
+        log.info("Поисковый индекс загружен: {} лемм из базы, сайтов из сегментов {}, за {} мс",
+                loader.lemmas, sites.size() - sitesToRebuild.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Записывает сегменты сайтов, индекс которых изменился с прошлой записи.
+     * Сайты в процессе индексации пропускаются, их сегмент будет записан
+     * после окончания обхода. Списки страниц, не менявшиеся во время записи,
+     * подменяются отображенными из нового файла.
+     */
+    @Scheduled(initialDelayString = "${indexing-settings.segment-merge-interval:60000}",
+            fixedDelayString = "${indexing-settings.segment-merge-interval:60000}")
+    public void writeSegments() {
+        if (manifest == null) {
+            return;
+        }
+        boolean changed = false;
+        for (SiteEntity siteEntity : siteRepository.findAll()) {
+            SiteIndex site = sites.get(siteEntity.getId());
+            if (site == null || siteEntity.getStatus() == StatusIndexingSite.INDEXING
+                    || site.generation.get() == site.writtenGeneration) {
+                continue;
+            }
+            try {
+                writeSegment(siteEntity, site);
+                changed = true;
+            } catch (IOException | RuntimeException e) {
+                log.error("Не удалось записать сегмент индекса сайта {}", siteEntity.getUrl(), e);
+            }
+        }
+        for (Integer siteId : manifest.getEntries().keySet()) {
+            if (!sites.containsKey(siteId)) {
+                deleteSegmentFile(manifest.remove(siteId));
+                changed = true;
+            }
+        }
+        if (changed) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                log.error("Не удалось сохранить манифест сегментов", e);
+            }
+        }
+    }
+
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmas) {
+        SiteIndex site = site(siteId);
+        lemmas.forEach((lemma, rank) -> site.postings.computeIfAbsent(lemma, k -> new PostingList()).put(pageId, rank));
+        site.documentLengths.set(pageId, lemmas.values().stream().mapToInt(Integer::intValue).sum());
+        site.generation.incrementAndGet();
+    }
+
+    /**
+     * @param documentLength новое число лемм на странице
+     */
+    public void updatePage(int siteId, int pageId, Map<String, Integer> changedLemmas, Collection<String> removedLemmas,
+                           int documentLength) {
+        SiteIndex site = site(siteId);
+        site.documentLengths.set(pageId, documentLength);
+        changedLemmas.forEach((lemma, rank) -> site.postings.computeIfAbsent(lemma, k -> new PostingList()).put(pageId, rank));
+        for (String lemma : removedLemmas) {
+            PostingList postingList = site.postings.get(lemma);
+            if (postingList != null) {
+                postingList.remove(pageId);
+            }
+        }
+        site.generation.incrementAndGet();
+    }
+
+    public void removeSite(int siteId) {
+        if (sites.remove(siteId) != null) {
+            sitesGeneration.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return номер поколения индекса сайта или -1, если индекса сайта нет
+     */
+    public long generation(int siteId) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? -1 : site.generation.get();
+    }
+
+    /**
+     * Меняется при появлении и удалении индекса сайта.
+     */
+    public long sitesGeneration() {
+        return sitesGeneration.get();
+    }
+
+    public int pageCount(int siteId) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? 0 : site.documentLengths.pageCount();
+    }
+
+    /**
+     * @return число страниц сайта, содержащих лемму
+     */
+    public int documentFrequency(int siteId, String lemma) {
+        SiteIndex site = sites.get(siteId);
+        PostingList postingList = site == null ? null : site.postings.get(lemma);
+        return postingList == null ? 0 : postingList.size();
+    }
+
+    /**
+     * Пересекает списки страниц, начиная с самого короткого: кандидаты
+     * ищутся в длинных списках прыжками по таблице пропусков,
+     * оценки лемм суммируются по ходу пересечения.
+     *
+     * @param deadline срок по {@link System#nanoTime()}, после него поиск
+     *                 прерывается {@link CancellationException}
+     */
+    public Hits search(int siteId, Collection<String> lemmas, long deadline) {
+        SiteIndex site = sites.get(siteId);
+        if (site == null || lemmas.isEmpty()) {
+            return Hits.EMPTY;
+        }
+        List<PostingList.Snapshot> snapshots = new ArrayList<>(lemmas.size());
+        for (String lemma : lemmas) {
+            PostingList postingList = site.postings.get(lemma);
+            if (postingList == null) {
+                return Hits.EMPTY;
+            }
+            snapshots.add(postingList.snapshot());
+        }
+        snapshots.sort(Comparator.comparingInt(PostingList.Snapshot::size));
+        int documentCount = Math.max(site.documentLengths.pageCount(), snapshots.get(snapshots.size() - 1).size());
+        float averageLength = site.documentLengths.averageLength();
+
+        PostingList.Snapshot first = snapshots.get(0);
+        float firstWeight = scorer.termWeight(first.size(), documentCount);
+        int[] pageIds = new int[first.size()];
+        float[] relevance = new float[pageIds.length];
+        PostingList.Cursor firstCursor = first.cursor();
+        for (int i = 0; firstCursor.next(); i++) {
+            if ((i & DEADLINE_CHECK_MASK) == 0) {
+                checkDeadline(deadline);
+            }
+            pageIds[i] = firstCursor.pageId();
+            relevance[i] = scorer.score(firstCursor.rank(), firstWeight, site.documentLengths.get(pageIds[i]), averageLength);
+        }
+        int size = pageIds.length;
+        for (int k = 1; k < snapshots.size() && size > 0; k++) {
+            PostingList.Cursor cursor = snapshots.get(k).cursor();
+            float weight = scorer.termWeight(snapshots.get(k).size(), documentCount);
+            int matched = 0;
+            for (int i = 0; i < size && cursor.advance(pageIds[i]); i++) {
+                if ((i & DEADLINE_CHECK_MASK) == 0) {
+                    checkDeadline(deadline);
+                }
+                if (cursor.pageId() == pageIds[i]) {
+                    pageIds[matched] = pageIds[i];
+                    relevance[matched++] = relevance[i]
+                            + scorer.score(cursor.rank(), weight, site.documentLengths.get(pageIds[i]), averageLength);
+                }
+            }
+            size = matched;
+        }
+        return new Hits(Arrays.copyOf(pageIds, size), Arrays.copyOf(relevance, size));
+    }
+
+    private static void checkDeadline(long deadline) {
+        if (System.nanoTime() - deadline > 0) {
+            throw new CancellationException("Истекло время поиска");
+        }
+    }
+
+    private void loadManifest() {
+        String directory = sitesList.getSegmentDirectory();
+        if (directory == null || directory.isBlank()) {
+            return;
+        }
+        try {
+            Path path = Path.of(directory);
+            Files.createDirectories(path);
+            manifest = SegmentManifest.load(path);
+        } catch (IOException | RuntimeException e) {
+            log.error("Не удалось прочитать манифест сегментов, индекс будет построен из базы", e);
+            manifest = null;
+        }
+    }
+
+    /**
+     * Отображает сегмент сайта, если манифест совпадает с базой: время статуса
+     * сайта и число страниц не изменились, и сайт не остался в статусе INDEXING.
+     */
+    private boolean loadSegment(SiteEntity siteEntity, int pageCount) {
+        SegmentManifest.Entry entry = manifest == null ? null : manifest.getEntries().get(siteEntity.getId());
+        if (entry == null || siteEntity.getStatus() == StatusIndexingSite.INDEXING
+                || !entry.matches(statusTime(siteEntity), pageCount)) {
+            return false;
+        }
+        try {
+            IndexSegment segment = IndexSegment.open(manifest.resolve(entry.segmentFile()));
+            SiteIndex site = site(siteEntity.getId());
+            segment.getPostings().forEach((lemma, snapshot) -> site.postings.put(lemma, new PostingList(snapshot)));
+            for (int i = 0; i < segment.getNormPageIds().length; i++) {
+                site.documentLengths.set(segment.getNormPageIds()[i], segment.getNormLengths()[i]);
+            }
+            site.writtenGeneration = site.generation.get();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Сегмент сайта {} поврежден, индекс будет построен из базы", siteEntity.getUrl(), e);
+            sites.put(siteEntity.getId(), new SiteIndex());
+            return false;
+        }
+    }
+
+    private void writeSegment(SiteEntity siteEntity, SiteIndex site) throws IOException {
+        long generation = site.generation.get();
+        long statusTime = statusTime(siteEntity);
+        int pageCount = pageRepository.countPageBySite(siteEntity);
+        Map<String, PostingList> postingLists = new TreeMap<>();
+        Map<String, PostingList.Snapshot> snapshots = new TreeMap<>();
+        BitSet pages = new BitSet();
+        site.postings.forEach((lemma, postingList) -> {
+            PostingList.Snapshot snapshot = postingList.snapshot();
+            if (snapshot.size() == 0) {
+                return;
+            }
+            postingLists.put(lemma, postingList);
+            snapshots.put(lemma, snapshot);
+            PostingList.Cursor cursor = snapshot.cursor();
+            while (cursor.next()) {
+                pages.set(cursor.pageId());
+            }
+        });
+        int[] normPageIds = pages.stream().toArray();
+        int[] normLengths = new int[normPageIds.length];
+        for (int i = 0; i < normPageIds.length; i++) {
+            normLengths[i] = site.documentLengths.get(normPageIds[i]);
+        }
+
+        String segmentFile = "site-" + siteEntity.getId() + "-" + generation + "-" + System.currentTimeMillis() + ".seg";
+        IndexSegment.write(manifest.resolve(segmentFile), siteEntity.getId(), snapshots, normPageIds, normLengths);
+        IndexSegment segment = IndexSegment.open(manifest.resolve(segmentFile));
+        segment.getPostings().forEach((lemma, mapped) ->
+                postingLists.get(lemma).replaceSnapshot(snapshots.get(lemma), mapped));
+        deleteSegmentFile(manifest.put(siteEntity.getId(), new SegmentManifest.Entry(segmentFile, statusTime, pageCount)));
+        site.writtenGeneration = generation;
+        log.info("Записан сегмент индекса сайта {}: {} лемм, {} страниц", siteEntity.getUrl(), snapshots.size(), normPageIds.length);
+    }
+
+    private void deleteSegmentFile(SegmentManifest.Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(manifest.resolve(entry.segmentFile()));
+        } catch (IOException e) {
+            log.warn("Не удалось удалить сегмент {}", entry.segmentFile());
+        }
+    }
+
+    private static long statusTime(SiteEntity siteEntity) {
+        Instant statusTime = siteEntity.getStatusTime();
+        return statusTime == null ? -1 : ChronoUnit.MICROS.between(Instant.EPOCH, statusTime);
+    }
+
+    private SiteIndex site(int siteId) {
+        return sites.computeIfAbsent(siteId, k -> {
+            sitesGeneration.incrementAndGet();
+            return new SiteIndex();
+        });
+    }
+
+    /**
+     * Собирает строки одной леммы в массивы и публикует их списком,
+     * когда начинается следующая лемма.
+     */
+    private class PostingLoader implements LemmaIndexJdbcRepository.PostingConsumer {
+        private int siteId;
+        private String lemma;
+        private int[] pageIds = new int[1024];
+        private float[] ranks = new float[1024];
+        private int size;
+        private int lemmas;
+
+        @Override
+        public void accept(int siteId, String lemma, int pageId, float rank) {
+            if (this.siteId != siteId || !lemma.equals(this.lemma)) {
+                flush();
+                this.siteId = siteId;
+                this.lemma = lemma;
+            }
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size++] = rank;
+            site(siteId).documentLengths.add(pageId, (int) rank);
+        }
+
+        void flush() {
+            if (size == 0) {
+                return;
+            }
+            PostingList.Snapshot snapshot = PostingList.Snapshot.encode(pageIds, ranks, size);
+            site(siteId).postings.put(lemma, new PostingList(snapshot));
+            lemmas++;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package searchengine.util;
+
+/**
+ * Okapi BM25: частые на сайте леммы весят меньше (IDF), вклад повторов
+ * насыщается параметром k1, длинные страницы штрафуются параметром b.
+ */
+public class Bm25Scorer implements Scorer {
+
+    private final float k1;
+    private final float b;
+
+    public Bm25Scorer(float k1, float b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public float termWeight(int documentFrequency, int documentCount) {
+        return (float) Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    @Override
+    public float score(float termFrequency, float termWeight, int documentLength, float averageDocumentLength) {
+        float lengthRatio = averageDocumentLength > 0 ? documentLength / averageDocumentLength : 1;
+        return termWeight * termFrequency * (k1 + 1) / (termFrequency + k1 * (1 - b + b * lengthRatio));
+    }
+}
@@ -0,0 +1,502 @@
+package searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import searchengine.config.FetchMode;
+import searchengine.config.SeenUrlMode;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.StageStatistics;
+import searchengine.model.FrontierUrl;
+import searchengine.model.FrontierUrlStatus;
+import searchengine.model.Page;
+import searchengine.model.PageVersion;
+import searchengine.model.SiteEntity;
+import searchengine.model.StatusIndexingSite;
+import searchengine.repository.FrontierJdbcRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.PageIndexer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Конвейер индексации сайтов: загрузка -> разбор и лемматизация -> запись в базу.
+ * У каждого этапа свой пул потоков: много загрузчиков, ждущих сеть
+ * (платформенные потоки ForkJoinPool или виртуальный поток на каждый URL),
+ * лемматизаторы по числу ядер и несколько писателей, сохраняющих страницы пачками.
+ * Между разбором и записью стоят ограниченные очереди, очередь загрузки
+ * (фронтир) не ограничена, чтобы разбор не блокировался на добавлении ссылок.
+ * Фронтир выдает URL с учетом задержки и лимита параллельных запросов на хост,
+ * ответы 429/503 повторяются с увеличенной задержкой.
+ * Состояние каждого URL сохраняется в таблицу frontier, поэтому прерванную
+ * индексацию сайта можно продолжить с места остановки.
+ * В инкрементальном режиме известные страницы запрашиваются условным GET,
+ * а неизменившиеся (304 или тот же хеш содержимого) не переиндексируются.
+ * Ссылки нормализуются, уже встреченные URL сайта хранятся в {@link SeenUrlStore}.
+ * Тело ответа передается на разбор байтами, не длиннее max-body-size; ссылки,
+ * заголовок и текст извлекаются за один обход ({@link HtmlExtractor}).
+ */
+@Slf4j
+public class CrawlPipeline {
+
+    private static final Pattern FILE_PATTERN = Pattern
+            .compile(".*\\.(jpg|jpeg|png|gif|bmp|pdf|doc|docx|xls|xlsx|ppt|pptx|zip|rar|tar|gz|7z|mp3|wav|mp4|mkv|avi|mov|sql|webp|svg)$", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_FETCH_ATTEMPTS = 3;
+    private static final long STATUS_TIME_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final PageIndexer pageIndexer;
+    private final FrontierJdbcRepository frontierRepository;
+    private final FrontierCheckpoint checkpoint;
+    private final SitesList sitesList;
+    private final Runnable onFinish;
+    private final HostScheduler<CrawlUrl> frontier;
+    private final PipelineStage<CrawlUrl> fetchStage;
+    private final PipelineStage<FetchedPage> parseStage;
+    private final PipelineStage<ParsedPage> persistStage;
+    private final Map<Integer, SiteCrawl> sites = new ConcurrentHashMap<>();
+    private final AtomicInteger activeSites = new AtomicInteger();
+    private volatile boolean stopped;
+
+    /**
+     * @param recheck URL был в работе при прерывании индексации,
+     *                страница могла успеть сохраниться
+     */
+    private record CrawlUrl(SiteCrawl site, String url, int depth, int attempt, boolean recheck) {
+    }
+
+    /**
+     * @param charset кодировка из Content-Type, null - определяется при разборе
+     * @param previous сохраненная версия страницы, только в инкрементальном режиме
+     */
+    private record FetchedPage(CrawlUrl task, int code, byte[] body, String charset, String etag, String lastModified,
+                               PageVersion previous) {
+    }
+
+    public enum CrawlMode {
+        FULL,
+        RESUME,
+        INCREMENTAL
+    }
+
+    private record ParsedPage(CrawlUrl task, PageLemmas pageLemmas) {
+    }
+
+    public CrawlPipeline(PageRepository pageRepository, SiteRepository siteRepository, PageIndexer pageIndexer,
+                         FrontierJdbcRepository frontierRepository, SitesList sitesList, Runnable onFinish) {
+        this.pageRepository = pageRepository;
+        this.siteRepository = siteRepository;
+        this.pageIndexer = pageIndexer;
+        this.frontierRepository = frontierRepository;
+        this.checkpoint = new FrontierCheckpoint(frontierRepository, sitesList.getCheckpointBatchSize());
+        this.sitesList = sitesList;
+        this.onFinish = onFinish;
+        int fetchThreads = sitesList.getFetchThreads();
+        int parseThreads = sitesList.getParseThreads() > 0 ? sitesList.getParseThreads() : Runtime.getRuntime().availableProcessors();
+        int writeThreads = sitesList.getWriteThreads();
+        this.frontier = new HostScheduler<>(CrawlPipeline::hostOf, sitesList.getRequestDelay(),
+                sitesList.getMaxRequestDelay(), sitesList.getMaxConcurrencyPerHost());
+        this.fetchStage = sitesList.getFetchMode() == FetchMode.VIRTUAL
+                ? PipelineStage.taskPerItem("fetch", PipelineStage.virtualThreadPerTaskExecutor(), sitesList.getMaxInFlightFetches(),
+                frontier, batch -> batch.forEach(this::fetch))
+                : new PipelineStage<>("fetch", new ForkJoinPool(fetchThreads), fetchThreads,
+                frontier, 1, batch -> batch.forEach(this::fetch));
+        this.parseStage = new PipelineStage<>("parse", Executors.newFixedThreadPool(parseThreads, PipelineStage.namedThreads("parse")), parseThreads,
+                sitesList.getQueueCapacity(), 1, batch -> batch.forEach(this::parse));
+        this.persistStage = new PipelineStage<>("persist", Executors.newFixedThreadPool(writeThreads, PipelineStage.namedThreads("persist")), writeThreads,
+                sitesList.getQueueCapacity(), sitesList.getWriteBatchSize(), this::persist);
+    }
+
+    public void start(Map<SiteEntity, CrawlMode> siteModes) {
+        fetchStage.start();
+        parseStage.start();
+        persistStage.start();
+        activeSites.set(siteModes.size());
+        siteModes.forEach((siteEntity, mode) -> {
+            SiteCrawl site = new SiteCrawl(siteEntity, mode == CrawlMode.INCREMENTAL);
+            sites.put(siteEntity.getId(), site);
+            switch (mode) {
+                case RESUME -> resume(site);
+                case INCREMENTAL -> recrawl(site);
+                default -> enqueue(site, site.rootUrl, 0);
+            }
+        });
+    }
+
+    public void stop() {
+        stopped = true;
+        shutdown();
+        checkpoint.flush();
+        for (SiteCrawl site : sites.values()) {
+            if (site.isActive()) {
+                pageIndexer.flushFrequencies(site.siteEntity);
+                site.markFailed("Индексация остановлена пользователем");
+                log.info("Индексация остановлена пользователем");
+            }
+            site.seenUrls.close();
+        }
+    }
+
+    public List<StageStatistics> getStatistics() {
+        return List.of(fetchStage.getStatistics(), parseStage.getStatistics(), persistStage.getStatistics());
+    }
+
+    private void shutdown() {
+        fetchStage.shutdown();
+        parseStage.shutdown();
+        persistStage.shutdown();
+    }
+
+    private void resume(SiteCrawl site) {
+        List<CrawlUrl> unfinished = new ArrayList<>();
+        frontierRepository.forEachBySite(site.siteEntity.getId(), frontierUrl -> {
+            site.seenUrls.add(UrlNormalizer.normalize(frontierUrl.url()));
+            if (frontierUrl.status() == FrontierUrlStatus.QUEUED || frontierUrl.status() == FrontierUrlStatus.IN_FLIGHT) {
+                boolean recheck = frontierUrl.status() == FrontierUrlStatus.IN_FLIGHT;
+                unfinished.add(new CrawlUrl(site, frontierUrl.url(), frontierUrl.depth(), 1, recheck));
+            }
+        });
+        log.info("Продолжение индексации {}: в очереди {} URL, всего известно {}", site.rootUrl, unfinished.size(), site.seenUrls.size());
+        site.pending.incrementAndGet();
+        for (CrawlUrl task : unfinished) {
+            site.pending.incrementAndGet();
+            frontier.put(task);
+        }
+        finish(site);
+    }
+
+    private void recrawl(SiteCrawl site) {
+        site.pending.incrementAndGet();
+        enqueue(site, site.rootUrl, 0);
+        for (String path : pageRepository.findPathsBySite(site.siteEntity)) {
+            enqueue(site, UrlNormalizer.normalize(site.urlOf(path)), 1);
+        }
+        log.info("Инкрементальная индексация {}: известно {} URL", site.rootUrl, site.seenUrls.size());
+        finish(site);
+    }
+
+    private void enqueue(SiteCrawl site, String url, int depth) {
+        if (stopped || !site.seenUrls.add(url)) {
+            return;
+        }
+        site.pending.incrementAndGet();
+        checkpoint.record(site.siteEntity.getId(), url, depth, FrontierUrlStatus.QUEUED);
+        frontier.put(new CrawlUrl(site, url, depth, 1, false));
+    }
+
+    private void record(CrawlUrl task, FrontierUrlStatus status) {
+        if (!stopped) {
+            checkpoint.record(task.site().siteEntity.getId(), task.url(), task.depth(), status);
+        }
+    }
+
+    private void fetch(CrawlUrl task) {
+        SiteCrawl site = task.site();
+        boolean released = false;
+        boolean handedOver = false;
+        try {
+            if (stopped) {
+                return;
+            }
+            record(task, FrontierUrlStatus.IN_FLIGHT);
+            PageVersion previous = site.incremental
+                    ? pageRepository.findFirstByPathAndSite(site.pathOf(task.url()), site.siteEntity)
+                    : null;
+            Connection.Response response = connection(task.url(), previous);
+            int statusCode = response.statusCode();
+            frontier.release(task, statusCode, retryAfterMillis(response.header("Retry-After")));
+            released = true;
+            site.updateStatusTime();
+            if ((statusCode == 429 || statusCode == 503) && task.attempt() < MAX_FETCH_ATTEMPTS) {
+                log.warn("Ответ {} на {}, повтор с увеличенной задержкой", statusCode, task.url());
+                frontier.put(new CrawlUrl(site, task.url(), task.depth(), task.attempt() + 1, task.recheck()));
+                handedOver = true;
+                return;
+            }
+            if (statusCode == 304) {
+                record(task, FrontierUrlStatus.DONE);
+                return;
+            }
+            if (statusCode >= 400) {
+                handleHttpError(site, task.url(), statusCode, previous);
+                record(task, FrontierUrlStatus.FAILED);
+                return;
+            }
+            parseStage.put(new FetchedPage(task, statusCode, response.bodyAsBytes(), response.charset(),
+                    response.header("ETag"), response.header("Last-Modified"), previous));
+            handedOver = true;
+        } catch (IOException e) {
+            log.error("Ошибка ввода-вывода {}: {}", task.url(), e.getMessage());
+            record(task, FrontierUrlStatus.FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!released) {
+                frontier.release(task, 0, 0);
+            }
+            if (!handedOver) {
+                finish(site);
+            }
+        }
+    }
+
+    private void parse(FetchedPage fetchedPage) {
+        CrawlUrl task = fetchedPage.task();
+        SiteCrawl site = task.site();
+        boolean handedOver = false;
+        try {
+            if (stopped) {
+                return;
+            }
+            String contentHash = ContentHash.of(fetchedPage.body());
+            PageVersion previous = fetchedPage.previous();
+            if (previous != null && contentHash.equals(previous.getContentHash())) {
+                record(task, FrontierUrlStatus.DONE);
+                return;
+            }
+            HtmlExtractor.ExtractedHtml html = HtmlExtractor.extract(fetchedPage.body(), fetchedPage.charset(), task.url());
+            for (String link : html.links()) {
+                String href = link.trim();
+                if (href.contains("#")) {
+                    continue;
+                }
+                String url = UrlNormalizer.normalize(href);
+                if (isValid(site, url)) {
+                    enqueue(site, url, task.depth() + 1);
+                }
+            }
+
+            String path = site.pathOf(task.url());
+            if (task.recheck() && pageRepository.existsByPathAndSite(path, site.siteEntity)) {
+                record(task, FrontierUrlStatus.DONE);
+                return;
+            }
+            Page page = new Page();
+            if (previous != null) {
+                page.setId(previous.getId());
+            }
+            page.setSite(site.siteEntity);
+            page.setPath(path);
+            page.setCode(fetchedPage.code());
+            page.setContent(fetchedPage.body());
+            page.setCharset(html.charset());
+            page.setTitle(html.title());
+            page.setText(html.text());
+            page.setEtag(fetchedPage.etag());
+            page.setLastModified(fetchedPage.lastModified());
+            page.setContentHash(contentHash);
+            Map<String, TokenPositions> positions = LemmaFinder.getInstance().collectLemmaPositions(page.getText());
+            persistStage.put(new ParsedPage(task, new PageLemmas(page, positions, previous != null)));
+            handedOver = true;
+        } catch (IOException e) {
+            log.error("Ошибка загрузки словаря морфологии", e);
+            record(task, FrontierUrlStatus.FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Ошибка разбора страницы {}", task.url(), e);
+            record(task, FrontierUrlStatus.FAILED);
+        } finally {
+            if (!handedOver) {
+                finish(site);
+            }
+        }
+    }
+
+    private void persist(List<ParsedPage> batch) {
+        try {
+            if (stopped) {
+                return;
+            }
+            log.info("Сохранение {} страниц", batch.size());
+            pageIndexer.savePages(batch.stream().map(ParsedPage::pageLemmas).toList());
+            batch.forEach(parsedPage -> record(parsedPage.task(), FrontierUrlStatus.DONE));
+        } catch (RuntimeException e) {
+            // новые страницы вставляются заново: id из откаченной пачки сбрасывает PageIndexer
+            log.error("Ошибка сохранения пачки страниц, сохраняем по одной", e);
+            for (ParsedPage parsedPage : batch) {
+                try {
+                    pageIndexer.savePages(List.of(parsedPage.pageLemmas()));
+                    record(parsedPage.task(), FrontierUrlStatus.DONE);
+                } catch (RuntimeException ex) {
+                    log.error("Ошибка сохранения страницы {}", parsedPage.pageLemmas().page().getPath(), ex);
+                    record(parsedPage.task(), FrontierUrlStatus.FAILED);
+                }
+            }
+        } finally {
+            for (ParsedPage parsedPage : batch) {
+                finish(parsedPage.task().site());
+            }
+        }
+    }
+
+    private void finish(SiteCrawl site) {
+        if (site.pending.decrementAndGet() != 0 || stopped) {
+            return;
+        }
+        checkpoint.flush();
+        pageIndexer.flushFrequencies(site.siteEntity);
+        site.markIndexed();
+        site.seenUrls.close();
+        if (activeSites.decrementAndGet() == 0) {
+            shutdown();
+            onFinish.run();
+        }
+    }
+
+    private void handleHttpError(SiteCrawl site, String url, int statusCode, PageVersion previous) {
+        log.error("Ошибка {} {}", statusCode, url);
+        if (statusCode >= 500 && site.isRoot(url)) {
+            site.markFailed("Ошибка " + statusCode);
+            return;
+        }
+        if (statusCode == 404 || statusCode == 500) {
+            Page page = new Page();
+            page.setSite(site.siteEntity);
+            page.setPath(site.pathOf(url));
+            page.setCode(statusCode);
+            page.setTitle("");
+            page.setText("");
+            if (previous != null) {
+                page.setId(previous.getId());
+                pageIndexer.updatePage(PageLemmas.empty(page, true));
+            } else {
+                pageRepository.save(page);
+            }
+        }
+    }
+
+    private boolean isValid(SiteCrawl site, String url) {
+        return url.startsWith(site.rootUrl) && !FILE_PATTERN.matcher(url).matches();
+    }
+
+    private Connection.Response connection(String url, PageVersion previous) throws IOException {
+        Connection connection = Jsoup.connect(url).userAgent(sitesList.getUserAgent()).referrer(sitesList.getReferrer()).timeout(10_000)
+                .ignoreContentType(true).ignoreHttpErrors(true).maxBodySize(sitesList.getMaxBodySize());
+        if (previous != null && previous.getEtag() != null) {
+            connection.header("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            connection.header("If-Modified-Since", previous.getLastModified());
+        }
+        return connection.execute();
+    }
+
+    private static String hostOf(CrawlUrl task) {
+        try {
+            String host = URI.create(task.url()).getHost();
+            if (host != null) {
+                return host.toLowerCase(Locale.ROOT);
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Некорректный URL {}", task.url());
+        }
+        return task.site().rootUrl;
+    }
+
+    private static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryTime = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(Instant.now(), retryTime).toMillis());
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+    }
+
+    private SeenUrlStore newSeenUrlStore() {
+        if (sitesList.getSeenUrlMode() == SeenUrlMode.EXACT) {
+            return new ExactSeenUrlStore();
+        }
+        return new FingerprintSeenUrlStore(sitesList.getSeenUrlMemoryLimit(), sitesList.isSeenUrlBloomFilter(),
+                Path.of(sitesList.getSeenUrlSpillDirectory()));
+    }
+
+    private class SiteCrawl {
+        private final SiteEntity siteEntity;
+        private final String rootUrl;
+        private final SeenUrlStore seenUrls = newSeenUrlStore();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong statusTimeUpdatedAt = new AtomicLong(System.nanoTime());
+        private final boolean incremental;
+
+        SiteCrawl(SiteEntity siteEntity, boolean incremental) {
+            this.siteEntity = siteEntity;
+            this.rootUrl = UrlNormalizer.normalize(siteEntity.getUrl());
+            this.incremental = incremental;
+        }
+
+        boolean isActive() {
+            return pending.get() > 0;
+        }
+
+        boolean isRoot(String url) {
+            return url.equals(rootUrl) || url.equals(rootUrl + "/");
+        }
+
+        String pathOf(String url) {
+            String path = url.substring(rootUrl.length());
+            return path.startsWith("/") ? path : "/" + path;
+        }
+
+        String urlOf(String path) {
+            return rootUrl.endsWith("/") ? rootUrl + path.substring(1) : rootUrl + path;
+        }
+
+        /**
+         * Обновляет время статуса не чаще раза в STATUS_TIME_INTERVAL и без блокировок:
+         * вызывается на каждой загрузке, в том числе из виртуальных потоков.
+         */
+        void updateStatusTime() {
+            long now = System.nanoTime();
+            long updatedAt = statusTimeUpdatedAt.get();
+            if (now - updatedAt < STATUS_TIME_INTERVAL || !statusTimeUpdatedAt.compareAndSet(updatedAt, now)) {
+                return;
+            }
+            Instant statusTime = Instant.now();
+            siteEntity.setStatusTime(statusTime);
+            siteRepository.updateStatusTime(siteEntity.getId(), statusTime);
+        }
+
+        synchronized void markIndexed() {
+            if (siteEntity.getStatus() == StatusIndexingSite.FAILED) {
+                return;
+            }
+            siteEntity.setStatus(StatusIndexingSite.INDEXED);
+            siteEntity.setLastError("");
+            siteEntity.setStatusTime(Instant.now());
+            siteRepository.save(siteEntity);
+            log.info("Сайт {} успешно проиндексирован", rootUrl);
+        }
+
+        synchronized void markFailed(String error) {
+            siteEntity.setStatus(StatusIndexingSite.FAILED);
+            siteEntity.setLastError(error);
+            siteEntity.setStatusTime(Instant.now());
+            siteRepository.save(siteEntity);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package searchengine.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Число лемм на страницах одного сайта. Открытая адресация по id страницы
+ * с линейным пробированием, id и длина упакованы в один long, поэтому
+ * чтение идет без блокировок. Запись и расширение таблицы под блокировкой.
+ * Id страниц положительные, пустая ячейка - 0.
+ * Страницами сайта для оценки релевантности считаются страницы с ненулевой
+ * длиной, то есть с леммами в индексе; их число и сумма длин ведутся здесь же.
+ */
+public class DocumentLengths {
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private volatile AtomicLongArray table = new AtomicLongArray(1024);
+    private int size;
+    private volatile int pageCount;
+    private volatile long totalLength;
+
+    public int get(int pageId) {
+        AtomicLongArray current = table;
+        int mask = current.length() - 1;
+        for (int index = slot(pageId, mask); ; index = (index + 1) & mask) {
+            long entry = current.get(index);
+            if (entry == 0) {
+                return 0;
+            }
+            if ((int) (entry >>> 32) == pageId) {
+                return (int) entry;
+            }
+        }
+    }
+
+    /**
+     * @return прежнее значение
+     */
+    public synchronized int set(int pageId, int length) {
+        AtomicLongArray current = table;
+        int mask = current.length() - 1;
+        int index = slot(pageId, mask);
+        long entry;
+        while ((entry = current.get(index)) != 0) {
+            if ((int) (entry >>> 32) == pageId) {
+                current.set(index, pack(pageId, length));
+                count((int) entry, length);
+                return (int) entry;
+            }
+            index = (index + 1) & mask;
+        }
+        current.set(index, pack(pageId, length));
+        count(0, length);
+        if (++size > current.length() * LOAD_FACTOR) {
+            resize();
+        }
+        return 0;
+    }
+
+    public synchronized void add(int pageId, int length) {
+        set(pageId, get(pageId) + length);
+    }
+
+    /**
+     * @return число страниц с леммами
+     */
+    public int pageCount() {
+        return pageCount;
+    }
+
+    public long totalLength() {
+        return totalLength;
+    }
+
+    public float averageLength() {
+        return (float) totalLength / Math.max(1, pageCount);
+    }
+
+    private void count(int previous, int length) {
+        if (previous == 0 && length != 0) {
+            pageCount++;
+        } else if (previous != 0 && length == 0) {
+            pageCount--;
+        }
+        totalLength += length - previous;
+    }
+
+    private void resize() {
+        AtomicLongArray current = table;
+        AtomicLongArray resized = new AtomicLongArray(current.length() * 2);
+        int mask = resized.length() - 1;
+        for (int i = 0; i < current.length(); i++) {
+            long entry = current.get(i);
+            if (entry != 0) {
+                int index = slot((int) (entry >>> 32), mask);
+                while (resized.get(index) != 0) {
+                    index = (index + 1) & mask;
+                }
+                resized.set(index, entry);
+            }
+        }
+        table = resized;
+    }
+
+    private static long pack(int pageId, int length) {
+        return (long) pageId << 32 | (length & 0xFFFFFFFFL);
+    }
+
+    private static int slot(int pageId, int mask) {
+        int h = pageId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,29 @@
+package searchengine.util;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ExactSeenUrlStore implements SeenUrlStore {
+
+    private final Set<String> urls = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean add(String url) {
+        return urls.add(url);
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    @Override
+    public long size() {
+        return urls.size();
+    }
+
+    @Override
+    public void close() {
+        urls.clear();
+    }
+}
@@ -0,0 +1,216 @@
+package searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Хранит вместо строк 64-битные отпечатки URL. Когда в памяти набирается
+ * {@code memoryLimit} отпечатков, они сортируются и сбрасываются на диск
+ * отдельным файлом; перед поиском по файлам проверяется фильтр Блума.
+ */
+@Slf4j
+public class FingerprintSeenUrlStore implements SeenUrlStore {
+
+    private static final int MAX_RUNS = 8;
+    private static final int BLOOM_BITS_PER_URL = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final int memoryLimit;
+    private final boolean bloomEnabled;
+    private final Path spillDirectory;
+    private final LongOpenHashSet memory;
+    private final List<SpillRun> runs = new ArrayList<>();
+    private BloomFilter bloomFilter;
+    private long size;
+
+    public FingerprintSeenUrlStore(int memoryLimit, boolean bloomEnabled, Path spillDirectory) {
+        this.memoryLimit = memoryLimit;
+        this.bloomEnabled = bloomEnabled;
+        this.spillDirectory = spillDirectory;
+        this.memory = new LongOpenHashSet(Math.min(memoryLimit, 1 << 16));
+    }
+
+    @Override
+    public synchronized boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        if (contains(fingerprint)) {
+            return false;
+        }
+        memory.add(fingerprint);
+        if (bloomFilter != null) {
+            bloomFilter.add(fingerprint);
+        }
+        size++;
+        if (memory.size() >= memoryLimit) {
+            spill();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(String url) {
+        return contains(fingerprint(url));
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        memory.clear();
+        runs.forEach(SpillRun::delete);
+        runs.clear();
+        bloomFilter = null;
+        size = 0;
+    }
+
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private boolean contains(long fingerprint) {
+        if (memory.contains(fingerprint)) {
+            return true;
+        }
+        if (runs.isEmpty() || (bloomFilter != null && !bloomFilter.mightContain(fingerprint))) {
+            return false;
+        }
+        for (SpillRun run : runs) {
+            if (run.contains(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void spill() {
+        long[] keys = memory.toSortedArray();
+        try {
+            if (bloomEnabled && bloomFilter == null) {
+                bloomFilter = new BloomFilter(Math.max(size, (long) memoryLimit * MAX_RUNS) * BLOOM_BITS_PER_URL,
+                        BLOOM_HASHES);
+                runs.forEach(run -> run.forEach(bloomFilter::add));
+                for (long key : keys) {
+                    bloomFilter.add(key);
+                }
+            }
+            runs.add(SpillRun.write(spillDirectory, keys));
+            memory.clear();
+            if (runs.size() > MAX_RUNS) {
+                SpillRun merged = SpillRun.merge(spillDirectory, runs);
+                runs.forEach(SpillRun::delete);
+                runs.clear();
+                runs.add(merged);
+            }
+            log.debug("Отпечатки URL сброшены на диск: {} файлов, всего {}", runs.size(), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сбросить отпечатки URL на диск", e);
+        }
+    }
+
+    private record SpillRun(Path file, LongBuffer keys) {
+
+        static SpillRun write(Path directory, long[] keys) throws IOException {
+            Path file = Files.createTempFile(directory, "seen-urls-", ".run");
+            ByteBuffer buffer = ByteBuffer.allocate(keys.length * Long.BYTES);
+            buffer.asLongBuffer().put(keys);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            return open(file);
+        }
+
+        static SpillRun merge(Path directory, List<SpillRun> runs) throws IOException {
+            Path file = Files.createTempFile(directory, "seen-urls-", ".run");
+            PriorityQueue<LongBuffer> heads = new PriorityQueue<>(
+                    (a, b) -> Long.compare(a.get(a.position()), b.get(b.position())));
+            runs.stream().map(run -> run.keys().duplicate()).filter(LongBuffer::hasRemaining).forEach(heads::add);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                while (!heads.isEmpty()) {
+                    LongBuffer head = heads.poll();
+                    buffer.putLong(head.get());
+                    if (head.hasRemaining()) {
+                        heads.add(head);
+                    }
+                    if (!buffer.hasRemaining()) {
+                        writeFully(channel, buffer);
+                    }
+                }
+                writeFully(channel, buffer);
+            }
+            return open(file);
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private static SpillRun open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return new SpillRun(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer());
+            }
+        }
+
+        boolean contains(long key) {
+            int low = 0;
+            int high = keys.limit() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = keys.get(mid);
+                if (value < key) {
+                    low = mid + 1;
+                } else if (value > key) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void forEach(LongConsumer consumer) {
+            for (int i = 0; i < keys.limit(); i++) {
+                consumer.accept(keys.get(i));
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить файл {}", file);
+            }
+        }
+    }
+}
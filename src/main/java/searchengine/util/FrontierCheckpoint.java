@@ -0,0 +1,60 @@
+package searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.model.FrontierUrl;
+import searchengine.model.FrontierUrlStatus;
+import searchengine.repository.FrontierJdbcRepository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Буфер изменений состояния URL фронтира. Изменения пишутся в базу пачками:
+ * при накоплении batchSize записей, не реже раза в FLUSH_INTERVAL и явно
+ * при завершении или остановке индексации. Запись идет под общей блокировкой,
+ * поэтому более позднее состояние URL не может быть перезаписано более ранним.
+ */
+@Slf4j
+public class FrontierCheckpoint {
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final FrontierJdbcRepository frontierRepository;
+    private final int batchSize;
+    private final ConcurrentLinkedQueue<FrontierUrl> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+    private volatile long lastFlushTime = System.nanoTime();
+
+    public FrontierCheckpoint(FrontierJdbcRepository frontierRepository, int batchSize) {
+        this.frontierRepository = frontierRepository;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void record(int siteId, String url, int depth, FrontierUrlStatus status) {
+        changes.add(new FrontierUrl(siteId, url, depth, depth, status));
+        if (pendingChanges.incrementAndGet() >= batchSize || System.nanoTime() - lastFlushTime > FLUSH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        lastFlushTime = System.nanoTime();
+        Map<String, FrontierUrl> latest = new LinkedHashMap<>();
+        FrontierUrl change;
+        while ((change = changes.poll()) != null) {
+            pendingChanges.decrementAndGet();
+            latest.put(change.siteId() + " " + change.url(), change);
+        }
+        if (latest.isEmpty()) {
+            return;
+        }
+        try {
+            frontierRepository.saveAll(latest.values());
+        } catch (RuntimeException e) {
+            log.error("Не удалось сохранить состояние фронтира ({} URL)", latest.size(), e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package searchengine.util;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Очередь URL с учетом вежливости к хостам. Элемент выдается, только если
+ * с момента последнего запроса к его хосту прошло не меньше текущей задержки
+ * и число запросов к хосту в работе меньше maxConcurrencyPerHost.
+ * Хосты перебираются по кругу, поэтому пока один хост ждет, загрузчики
+ * заняты другими. Каждый выданный элемент нужно вернуть через release():
+ * ответы 429/503 увеличивают задержку хоста (с учетом Retry-After),
+ * успешные ответы постепенно возвращают ее к базовой.
+ */
+public class HostScheduler<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+
+    private final Function<T, String> hostOf;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int maxConcurrencyPerHost;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, HostState<T>> hosts = new HashMap<>();
+    private final List<HostState<T>> hostOrder = new ArrayList<>();
+    private int nextHost;
+    private int size;
+
+    private static class HostState<T> {
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private long delayNanos;
+        private long nextAllowedTime;
+        private int inFlight;
+    }
+
+    public HostScheduler(Function<T, String> hostOf, long minDelayMillis, long maxDelayMillis, int maxConcurrencyPerHost) {
+        this.hostOf = hostOf;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minDelayMillis, maxDelayMillis));
+        this.maxConcurrencyPerHost = Math.max(1, maxConcurrencyPerHost);
+    }
+
+    public void release(T item, int statusCode, long retryAfterMillis) {
+        lock.lock();
+        try {
+            HostState<T> host = hostState(hostOf.apply(item));
+            host.inFlight--;
+            long now = System.nanoTime();
+            if (statusCode == 429 || statusCode == 503) {
+                long retryAfterNanos = TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+                long backoff = Math.max(Math.max(host.delayNanos * 2, minDelayNanos), retryAfterNanos);
+                host.delayNanos = Math.min(backoff, maxDelayNanos);
+                host.nextAllowedTime = Math.max(host.nextAllowedTime, now + Math.max(host.delayNanos, retryAfterNanos));
+            } else if (statusCode < 400 && host.delayNanos > minDelayNanos) {
+                host.delayNanos = Math.max(minDelayNanos, host.delayNanos - (host.delayNanos - minDelayNanos) / 4 - 1);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        lock.lock();
+        try {
+            hostState(hostOf.apply(item)).queue.addLast(item);
+            size++;
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(T item) {
+        offer(item);
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) {
+        return offer(item);
+    }
+
+    @Override
+    public T poll() {
+        lock.lock();
+        try {
+            return pollReady(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                T item = pollReady(now);
+                if (item != null) {
+                    return item;
+                }
+                long waitNanos = Math.min(deadline, nextReadyTime(now)) - now;
+                if (deadline - now <= 0) {
+                    return null;
+                }
+                changed.awaitNanos(Math.max(waitNanos, 1));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T item;
+        do {
+            item = poll(1, TimeUnit.SECONDS);
+        } while (item == null);
+        return item;
+    }
+
+    @Override
+    public T peek() {
+        lock.lock();
+        try {
+            for (HostState<T> host : hostOrder) {
+                if (!host.queue.isEmpty()) {
+                    return host.queue.peekFirst();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        lock.lock();
+        try {
+            int count = 0;
+            long now = System.nanoTime();
+            T item;
+            while (count < maxElements && (item = pollReady(now)) != null) {
+                collection.add(item);
+                count++;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        lock.lock();
+        try {
+            List<T> items = new ArrayList<>(size);
+            for (HostState<T> host : hostOrder) {
+                items.addAll(host.queue);
+            }
+            return Collections.unmodifiableList(items).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T pollReady(long now) {
+        int hostCount = hostOrder.size();
+        for (int i = 0; i < hostCount; i++) {
+            int index = (nextHost + i) % hostCount;
+            HostState<T> host = hostOrder.get(index);
+            if (isReady(host, now)) {
+                T item = host.queue.pollFirst();
+                host.inFlight++;
+                host.nextAllowedTime = now + host.delayNanos;
+                nextHost = (index + 1) % hostCount;
+                size--;
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private boolean isReady(HostState<T> host, long now) {
+        return !host.queue.isEmpty() && host.inFlight < maxConcurrencyPerHost && now - host.nextAllowedTime >= 0;
+    }
+
+    private long nextReadyTime(long now) {
+        long next = Long.MAX_VALUE;
+        for (HostState<T> host : hostOrder) {
+            if (!host.queue.isEmpty() && host.inFlight < maxConcurrencyPerHost) {
+                next = Math.min(next, Math.max(now, host.nextAllowedTime));
+            }
+        }
+        return next;
+    }
+
+    private HostState<T> hostState(String hostName) {
+        return hosts.computeIfAbsent(hostName, k -> {
+            HostState<T> host = new HostState<>();
+            host.delayNanos = minDelayNanos;
+            host.nextAllowedTime = System.nanoTime();
+            hostOrder.add(host);
+            return host;
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package searchengine.util;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбирает тело ответа прямо из байтов и за один обход DOM собирает
+ * ссылки, заголовок и видимый текст. Текст собирается как {@link Element#text()}
+ * документа: содержимое script и style в него не попадает, блочные элементы
+ * разделяются пробелом. Отличия: пробелы схлопываются и внутри pre, символы NUL
+ * отбрасываются, чтобы текст можно было сохранить в базу.
+ */
+public final class HtmlExtractor {
+
+    /**
+     * @param charset кодировка, в которой разобрано тело ответа
+     */
+    public record ExtractedHtml(String title, String text, List<String> links, String charset) {
+    }
+
+    private HtmlExtractor() {
+    }
+
+    /**
+     * @param charset кодировка из Content-Type или null, тогда она определяется по BOM и meta
+     */
+    public static ExtractedHtml extract(byte[] body, String charset, String baseUri) {
+        Document doc;
+        try {
+            doc = Jsoup.parse(new ByteArrayInputStream(body), charset, baseUri);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collector collector = new Collector();
+        NodeTraversor.traverse(collector, doc);
+        String title = collector.title == null ? "" : collector.title;
+        return new ExtractedHtml(title, collector.text.toString().trim(), collector.links, doc.charset().name());
+    }
+
+    private static final class Collector implements NodeVisitor {
+
+        private final StringBuilder text = new StringBuilder();
+        private final List<String> links = new ArrayList<>();
+        private String title;
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode textNode) {
+                appendNormalized(text, textNode.getWholeText());
+            } else if (node instanceof Element element) {
+                String name = element.normalName();
+                if (name.equals("a")) {
+                    String href = element.absUrl("href");
+                    if (!href.isEmpty()) {
+                        links.add(href);
+                    }
+                } else if (name.equals("title") && title == null) {
+                    StringBuilder normalized = new StringBuilder();
+                    appendNormalized(normalized, element.text());
+                    title = normalized.toString().trim();
+                }
+                if (text.length() > 0 && (element.isBlock() || name.equals("br")) && !endsWithSpace()) {
+                    text.append(' ');
+                }
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            if (node instanceof Element element && element.isBlock()
+                    && node.nextSibling() instanceof TextNode && !endsWithSpace()) {
+                text.append(' ');
+            }
+        }
+
+        private boolean endsWithSpace() {
+            return endsWithSpace(text);
+        }
+
+        private static void appendNormalized(StringBuilder target, String value) {
+            boolean lastWasWhite = target.length() == 0 || endsWithSpace(target);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (isWhitespace(c)) {
+                    if (!lastWasWhite) {
+                        target.append(' ');
+                        lastWasWhite = true;
+                    }
+                } else if (c != '\u0000') {
+                    target.append(c);
+                    lastWasWhite = false;
+                }
+            }
+        }
+
+        private static boolean endsWithSpace(StringBuilder target) {
+            return target.length() > 0 && target.charAt(target.length() - 1) == ' ';
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00a0';
+        }
+    }
+}
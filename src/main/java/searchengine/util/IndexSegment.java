@@ -0,0 +1,200 @@
+package searchengine.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Неизменяемый файл сегмента поискового индекса одного сайта.
+ * <pre>
+ * заголовок:  magic, version, siteId, число лемм, число страниц, длина области списков (long)
+ * словарь:    для каждой леммы - длина и байты UTF-8, size, число блоков, длина разностей, смещение списка (long)
+ * списки:     первые id блоков, смещения блоков, квантованные rank, разности id
+ * нормы:      пары (id страницы, число лемм)
+ * </pre>
+ * Файл отображается в память целиком, списки страниц читаются прямо из него,
+ * в куче остается только словарь. Файл другого формата или обрезанный
+ * не открывается ({@link IOException}).
+ */
+public final class IndexSegment {
+
+    private static final int MAGIC = 0x53454731;
+    private static final int VERSION = 1;
+    /**
+     * Минимальная длина записи словаря: пустая лемма и числа записи.
+     */
+    private static final int MIN_TERM_ENTRY = Short.BYTES + 3 * Integer.BYTES + Long.BYTES;
+
+    private final int siteId;
+    private final Map<String, PostingList.Snapshot> postings;
+    private final int[] normPageIds;
+    private final int[] normLengths;
+
+    private IndexSegment(int siteId, Map<String, PostingList.Snapshot> postings, int[] normPageIds, int[] normLengths) {
+        this.siteId = siteId;
+        this.postings = postings;
+        this.normPageIds = normPageIds;
+        this.normLengths = normLengths;
+    }
+
+    public int getSiteId() {
+        return siteId;
+    }
+
+    public Map<String, PostingList.Snapshot> getPostings() {
+        return postings;
+    }
+
+    public int[] getNormPageIds() {
+        return normPageIds;
+    }
+
+    public int[] getNormLengths() {
+        return normLengths;
+    }
+
+    public static void write(Path file, int siteId, Map<String, PostingList.Snapshot> postings,
+                             int[] normPageIds, int[] normLengths) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            long postingsLength = 0;
+            for (PostingList.Snapshot snapshot : postings.values()) {
+                postingsLength += postingLength(snapshot);
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(siteId);
+            out.writeInt(postings.size());
+            out.writeInt(normPageIds.length);
+            out.writeLong(postingsLength);
+
+            long offset = 0;
+            for (Map.Entry<String, PostingList.Snapshot> entry : postings.entrySet()) {
+                byte[] lemma = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                PostingList.Snapshot snapshot = entry.getValue();
+                out.writeShort(lemma.length);
+                out.write(lemma);
+                out.writeInt(snapshot.size());
+                out.writeInt(snapshot.blockCount());
+                out.writeInt(snapshot.deltas().remaining());
+                out.writeLong(offset);
+                offset += postingLength(snapshot);
+            }
+            for (PostingList.Snapshot snapshot : postings.values()) {
+                IntBuffer firstIds = snapshot.blockFirstIds();
+                while (firstIds.hasRemaining()) {
+                    out.writeInt(firstIds.get());
+                }
+                IntBuffer blockOffsets = snapshot.blockOffsets();
+                while (blockOffsets.hasRemaining()) {
+                    out.writeInt(blockOffsets.get());
+                }
+                writeBytes(out, snapshot.quantizedRanks());
+                writeBytes(out, snapshot.deltas());
+            }
+            for (int i = 0; i < normPageIds.length; i++) {
+                out.writeInt(normPageIds[i]);
+                out.writeInt(normLengths[i]);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static IndexSegment open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return read(file, buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Сегмент поврежден " + file, e);
+        }
+    }
+
+    private static IndexSegment read(Path file, ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Неизвестный формат сегмента " + file);
+        }
+        int siteId = buffer.getInt();
+        int termCount = buffer.getInt();
+        int normCount = buffer.getInt();
+        long postingsLength = buffer.getLong();
+        if (termCount < 0 || normCount < 0 || postingsLength < 0 || termCount > buffer.remaining() / MIN_TERM_ENTRY) {
+            throw new IOException("Сегмент поврежден " + file);
+        }
+
+        String[] lemmas = new String[termCount];
+        int[] sizes = new int[termCount];
+        int[] blockCounts = new int[termCount];
+        int[] deltaLengths = new int[termCount];
+        long[] offsets = new long[termCount];
+        for (int i = 0; i < termCount; i++) {
+            byte[] lemma = new byte[buffer.getShort()];
+            buffer.get(lemma);
+            lemmas[i] = new String(lemma, StandardCharsets.UTF_8);
+            sizes[i] = buffer.getInt();
+            blockCounts[i] = buffer.getInt();
+            deltaLengths[i] = buffer.getInt();
+            offsets[i] = buffer.getLong();
+        }
+
+        int postingsStart = buffer.position();
+        if (postingsStart + postingsLength + 2L * Integer.BYTES * normCount != buffer.limit()) {
+            throw new IOException("Сегмент поврежден " + file);
+        }
+        Map<String, PostingList.Snapshot> postings = new HashMap<>(termCount * 2);
+        for (int i = 0; i < termCount; i++) {
+            int position = postingsStart + (int) offsets[i];
+            int blocks = blockCounts[i];
+            IntBuffer firstIds = buffer.slice(position, blocks * Integer.BYTES).asIntBuffer();
+            position += blocks * Integer.BYTES;
+            IntBuffer blockOffsets = buffer.slice(position, blocks * Integer.BYTES).asIntBuffer();
+            position += blocks * Integer.BYTES;
+            ByteBuffer ranks = buffer.slice(position, sizes[i]);
+            position += sizes[i];
+            ByteBuffer deltas = buffer.slice(position, deltaLengths[i]);
+            postings.put(lemmas[i], new PostingList.Snapshot(sizes[i], deltas, firstIds, blockOffsets, ranks));
+        }
+
+        buffer.position(postingsStart + (int) postingsLength);
+        int[] normPageIds = new int[normCount];
+        int[] normLengths = new int[normCount];
+        for (int i = 0; i < normCount; i++) {
+            normPageIds[i] = buffer.getInt();
+            normLengths[i] = buffer.getInt();
+        }
+        return new IndexSegment(siteId, postings, normPageIds, normLengths);
+    }
+
+    private static long postingLength(PostingList.Snapshot snapshot) {
+        return 2L * Integer.BYTES * snapshot.blockCount() + snapshot.size() + snapshot.deltas().remaining();
+    }
+
+    private static void writeBytes(DataOutputStream out, ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,136 @@
+package searchengine.util;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.WrongCharaterException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Морфология одного языка: словарь, служебные части речи и стоп-слова.
+ * Слово отбрасывается, если оно само или его лемма в списке стоп-слов
+ * либо хотя бы одна его форма относится к служебной части речи.
+ */
+final class LanguageMorphology {
+
+    private static final Pattern WORD_TYPE_PATTERN = Pattern.compile("\\W\\w&&[^а-яА-Я\\s]");
+    private static final Pattern TAG_SEPARATOR = Pattern.compile("[ ,]");
+
+    private final LuceneMorphology luceneMorphology;
+    private final Set<String> particlesNames;
+    private final Set<String> stopWords;
+    /**
+     * Признак служебной части речи по морфологическому тегу (часть morph info после '|').
+     */
+    private final Map<String, Boolean> particleTags = new ConcurrentHashMap<>();
+
+    LanguageMorphology(LuceneMorphology luceneMorphology, Set<String> particlesNames, String stopWordsResource) throws IOException {
+        this.luceneMorphology = luceneMorphology;
+        this.particlesNames = particlesNames;
+        this.stopWords = loadStopWords(stopWordsResource);
+    }
+
+    /**
+     * @return первая нормальная форма слова в нижнем регистре или null
+     */
+    String findNormalForm(String word) {
+        if (stopWords.contains(word)) {
+            return null;
+        }
+        try {
+            if (anyWordBaseBelongToParticle(luceneMorphology.getMorphInfo(word))) {
+                return null;
+            }
+            List<String> normalForms = luceneMorphology.getNormalForms(word);
+            if (normalForms.isEmpty() || stopWords.contains(normalForms.get(0))) {
+                return null;
+            }
+            return normalForms.get(0);
+        } catch (WrongCharaterException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Все нормальные формы слова запроса, без служебных и стоп-слов.
+     */
+    List<String> findNormalForms(String word) {
+        if (stopWords.contains(word)) {
+            return List.of();
+        }
+        try {
+            List<String> wordInfo = luceneMorphology.getMorphInfo(word);
+            if (!isCorrectWordForm(wordInfo) || anyWordBaseBelongToParticle(wordInfo)) {
+                return List.of();
+            }
+            List<String> normalForms = new ArrayList<>();
+            for (String normalForm : luceneMorphology.getNormalForms(word)) {
+                if (!stopWords.contains(normalForm)) {
+                    normalForms.add(normalForm);
+                }
+            }
+            return normalForms;
+        } catch (WrongCharaterException e) {
+            return List.of();
+        }
+    }
+
+    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
+        for (String wordBase : wordBaseForms) {
+            if (hasParticleProperty(wordBase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Теги морфологии уже в верхнем регистре, признак считается один раз на тег.
+     */
+    private boolean hasParticleProperty(String wordBase) {
+        String tag = wordBase.substring(wordBase.indexOf('|') + 1);
+        return particleTags.computeIfAbsent(tag, this::isParticleTag);
+    }
+
+    private boolean isParticleTag(String tag) {
+        for (String property : TAG_SEPARATOR.split(tag)) {
+            if (particlesNames.contains(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCorrectWordForm(List<String> wordInfo) {
+        for (String morphInfo : wordInfo) {
+            if (WORD_TYPE_PATTERN.matcher(morphInfo).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> loadStopWords(String resource) throws IOException {
+        InputStream stream = LanguageMorphology.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new IOException("Не найден список стоп-слов " + resource);
+        }
+        Set<String> stopWords = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    stopWords.add(line);
+                }
+            }
+        }
+        return Set.copyOf(stopWords);
+    }
+}
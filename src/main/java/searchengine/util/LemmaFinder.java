@@ -1,100 +1,138 @@
 package searchengine.util;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 
 import java.io.IOException;
 import java.util.*;
 
+/**
+ * Лемматизатор русского и английского текста. Слово разбирается морфологией
+ * по алфавиту: кириллица - русской, латиница - английской.
+ */
 @Slf4j
 public class LemmaFinder {
-    private final LuceneMorphology luceneMorphology;
-    private static final String WORD_TYPE_REGEX = "\\W\\w&&[^а-яА-Я\\s]";
-    private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
-
+    private static final Set<String> RUSSIAN_PARTICLES = Set.of("МЕЖД", "ПРЕДЛ", "СОЮЗ");
+    private static final Set<String> ENGLISH_PARTICLES = Set.of("CONJ", "PREP", "ARTICLE", "PART", "INT");
+    private static final int NORMAL_FORM_CACHE_SIZE = 4_096;
+    private static final String NOT_A_LEMMA = "";
+    private static volatile LemmaFinder instance;
+    private final LanguageMorphology russianMorphology;
+    private final LanguageMorphology englishMorphology;
+    /**
+     * Кэш у каждого потока свой, чтобы искать слово по буферу без создания строки.
+     * Лемматизируют многие потоки (Tomcat, поиск, индексация), поэтому кэш
+     * небольшой: до 3 тысяч слов, частые слова текста в нем помещаются.
+     */
+    private final ThreadLocal<NormalFormCache> normalFormCache =
+            ThreadLocal.withInitial(() -> new NormalFormCache(NORMAL_FORM_CACHE_SIZE));
+
+    /**
+     * Словари морфологии загружаются один раз на процесс,
+     * экземпляр общий для всех потоков индексации и поиска.
+     */
     public static LemmaFinder getInstance() throws IOException {
-        LuceneMorphology morphology= new RussianLuceneMorphology();
-        return new LemmaFinder(morphology);
+        LemmaFinder lemmaFinder = instance;
+        if (lemmaFinder == null) {
+            synchronized (LemmaFinder.class) {
+                lemmaFinder = instance;
+                if (lemmaFinder == null) {
+                    log.info("Загрузка словарей морфологии");
+                    lemmaFinder = new LemmaFinder(
+                            new LanguageMorphology(new RussianLuceneMorphology(), RUSSIAN_PARTICLES, "/stopwords/russian.txt"),
+                            new LanguageMorphology(new EnglishLuceneMorphology(), ENGLISH_PARTICLES, "/stopwords/english.txt"));
+                    instance = lemmaFinder;
+                }
+            }
+        }
+        return lemmaFinder;
     }
 
-    private LemmaFinder(LuceneMorphology luceneMorphology) {
-        this.luceneMorphology = luceneMorphology;
+    private LemmaFinder(LanguageMorphology russianMorphology, LanguageMorphology englishMorphology) {
+        this.russianMorphology = russianMorphology;
+        this.englishMorphology = englishMorphology;
     }
 
     public Map<String, Integer> collectLemmas(String text) {
-        String[] words = arrayContainsRussianWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
-
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
+        NormalFormCache cache = normalFormCache.get();
+        ObjectIntCounter<String> lemmas = new ObjectIntCounter<>(64);
+        WordTokenizer.forEachWord(text, (start, end) -> {
+            String normalWord = getNormalForm(cache, text, start, end);
+            if (normalWord != null) {
+                lemmas.increment(normalWord);
             }
+        });
+        return lemmas.toMap();
+    }
 
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
+    /**
+     * Разбивает текст на русские и английские слова и собирает для каждой леммы
+     * смещения начала ее слов в исходном тексте.
+     */
+    public Map<String, TokenPositions> collectLemmaPositions(String text) {
+        NormalFormCache cache = normalFormCache.get();
+        Map<String, TokenPositions> positions = new HashMap<>();
+        WordTokenizer.forEachWord(text, (start, end) -> {
+            String normalWord = getNormalForm(cache, text, start, end);
+            if (normalWord != null) {
+                positions.computeIfAbsent(normalWord, k -> new TokenPositions()).add(start);
             }
+        });
+        return positions;
+    }
 
-            String normalWord = normalForms.get(0);
-
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
-            }
-        }
+    public static boolean isRussianLetter(char c) {
+        char lowerCase = Character.toLowerCase(c);
+        return lowerCase >= 'а' && lowerCase <= 'я';
+    }
 
-        return lemmas;
+    public static boolean isLatinLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
     }
 
-    public Set<String> getLemmaSet(String text) {
-        String[] textArray = arrayContainsRussianWords(text);
-        Set<String> lemmaSet = new HashSet<>();
-        for (String word : textArray) {
-            if (!word.isEmpty() && isCorrectWordForm(word)) {
-                List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-                if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                    continue;
-                }
-                lemmaSet.addAll(luceneMorphology.getNormalForms(word));
-            }
+    public List<Map<String, Integer>> collectLemmas(List<String> texts) {
+        List<Map<String, Integer>> result = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            result.add(collectLemmas(text));
         }
-        return lemmaSet;
+        return result;
     }
 
-    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
-        return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
+    /**
+     * Возвращает нормальную форму слова в нижнем регистре
+     * или null, если слово служебное либо не найдено в словаре.
+     */
+    public String getNormalForm(String word) {
+        return getNormalForm(normalFormCache.get(), word, 0, word.length());
     }
 
-    private boolean hasParticleProperty(String wordBase) {
-        for (String property : particlesNames) {
-            if (wordBase.toUpperCase().contains(property)) {
-                return true;
-            }
+    private String getNormalForm(NormalFormCache cache, CharSequence text, int start, int end) {
+        cache.setWord(text, start, end);
+        String normalWord = cache.get();
+        if (normalWord == null) {
+            String word = cache.word();
+            normalWord = findNormalForm(word);
+            cache.put(word, normalWord);
         }
-        return false;
+        return normalWord.isEmpty() ? null : normalWord;
     }
 
-    private String[] arrayContainsRussianWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-я\\s])", " ")
-                .trim()
-                .split("\\s+");
+    private String findNormalForm(String word) {
+        String normalForm = morphologyOf(word).findNormalForm(word);
+        return normalForm == null ? NOT_A_LEMMA : normalForm;
     }
 
-    private boolean isCorrectWordForm(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
-        for (String morphInfo : wordInfo) {
-            if (morphInfo.matches(WORD_TYPE_REGEX)) {
-                return false;
-            }
-        }
-        return true;
+    public Set<String> getLemmaSet(String text) {
+        Set<String> lemmaSet = new HashSet<>();
+        WordTokenizer.forEachWord(text, (start, end) -> {
+            String word = text.substring(start, end).toLowerCase(Locale.ROOT);
+            lemmaSet.addAll(morphologyOf(word).findNormalForms(word));
+        });
+        return lemmaSet;
+    }
+
+    private LanguageMorphology morphologyOf(String word) {
+        return isLatinLetter(word.charAt(0)) ? englishMorphology : russianMorphology;
     }
-}
\ No newline at end of file
+}
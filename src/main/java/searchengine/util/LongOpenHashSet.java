@@ -0,0 +1,85 @@
+package searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Множество long без упаковки в объекты: открытая адресация
+ * с линейным пробированием. Значение 0 зарезервировано под пустую ячейку.
+ */
+class LongOpenHashSet {
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private long[] table;
+    private int mask;
+    private int size;
+
+    LongOpenHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    boolean add(long key) {
+        int index = slot(key);
+        while (table[index] != 0) {
+            if (table[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = key;
+        if (++size > table.length * LOAD_FACTOR) {
+            resize();
+        }
+        return true;
+    }
+
+    boolean contains(long key) {
+        int index = slot(key);
+        while (table[index] != 0) {
+            if (table[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] toSortedArray() {
+        long[] keys = new long[size];
+        int i = 0;
+        for (long key : table) {
+            if (key != 0) {
+                keys[i++] = key;
+            }
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+    }
+
+    private void resize() {
+        long[] oldTable = table;
+        table = new long[oldTable.length << 1];
+        mask = table.length - 1;
+        size = 0;
+        for (long key : oldTable) {
+            if (key != 0) {
+                add(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Кэш нормальных форм одного потока. Слово копируется в буфер в нижнем регистре
+ * и ищется прямо по символам буфера, строка создается только при промахе.
+ * Открытая адресация с линейным пробированием, заполненный кэш очищается целиком.
+ */
+final class NormalFormCache {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final String[] keys;
+    private final String[] values;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+    private char[] word = new char[32];
+    private int length;
+    private int hash;
+
+    NormalFormCache(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        keys = new String[tableSize];
+        values = new String[tableSize];
+        mask = tableSize - 1;
+        maxSize = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    /**
+     * Делает текущим слово text[start, end) в нижнем регистре.
+     */
+    void setWord(CharSequence text, int start, int end) {
+        length = end - start;
+        if (word.length < length) {
+            word = new char[Math.max(length, word.length * 2)];
+        }
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(start + i));
+            word[i] = c;
+            h = 31 * h + c;
+        }
+        hash = h;
+    }
+
+    /**
+     * @return значение для текущего слова или null, если его нет в кэше
+     */
+    String get() {
+        int index = slot(hash);
+        while (keys[index] != null) {
+            if (matches(keys[index])) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    String word() {
+        return new String(word, 0, length);
+    }
+
+    void put(String key, String value) {
+        if (size >= maxSize) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+        int index = slot(key.hashCode());
+        while (keys[index] != null) {
+            if (keys[index].equals(key)) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    private boolean matches(String key) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slot(int h) {
+        return ((h ^ (h >>> 16)) * 0x9E3779B9 >>> 7) & mask;
+    }
+}
@@ -0,0 +1,79 @@
+package searchengine.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Счетчик вхождений объектов без упаковки счетчиков в Integer:
+ * открытая адресация с линейным пробированием.
+ */
+final class ObjectIntCounter<K> {
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private Object[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+
+    ObjectIntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new Object[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    void increment(K key) {
+        int index = slot(key);
+        while (keys[index] != null) {
+            if (keys[index].equals(key)) {
+                counts[index]++;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        counts[index] = 1;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<K, Integer> toMap() {
+        Map<K, Integer> map = new HashMap<>((int) (size / 0.75f) + 1);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                map.put((K) keys[i], counts[i]);
+            }
+        }
+        return map;
+    }
+
+    private int slot(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new Object[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = slot(oldKeys[i]);
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+}
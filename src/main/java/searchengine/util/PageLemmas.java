@@ -0,0 +1,28 @@
+package searchengine.util;
+
+import searchengine.model.Page;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Страница и позиции ее лемм в тексте страницы.
+ *
+ * @param existing страница уже есть в базе (найдена при загрузке) и обновляется
+ *                 по разнице лемм; иначе она вставляется как новая
+ */
+public record PageLemmas(Page page, Map<String, TokenPositions> positions, boolean existing) {
+
+    public static PageLemmas empty(Page page, boolean existing) {
+        return new PageLemmas(page, Map.of(), existing);
+    }
+
+    /**
+     * @return лемма -> число вхождений (rank)
+     */
+    public Map<String, Integer> lemmas() {
+        Map<String, Integer> lemmas = new HashMap<>(positions.size() * 2);
+        positions.forEach((lemma, tokenPositions) -> lemmas.put(lemma, tokenPositions.size()));
+        return lemmas;
+    }
+}
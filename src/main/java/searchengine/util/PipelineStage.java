@@ -0,0 +1,190 @@
+package searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.statistics.StageStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Этап конвейера индексации: очередь задач и пул обработчиков.
+ * Ограниченная очередь блокирует предыдущий этап, когда этот не успевает.
+ * Обработчик получает пачку до batchSize элементов и сам отвечает
+ * за обработку ошибок каждого элемента.
+ * В режиме taskPerItem один диспетчер запускает отдельную задачу на каждый
+ * элемент (например, виртуальный поток на URL), не более maxInFlight одновременно.
+ */
+@Slf4j
+public class PipelineStage<T> {
+
+    private static final long POLL_TIMEOUT_MS = 200;
+
+    private final String name;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final BlockingQueue<T> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final Consumer<List<T>> handler;
+    private final ExecutorService taskExecutor;
+    private final Semaphore inFlight;
+    private final LongAdder processed = new LongAdder();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private final long startTime = System.nanoTime();
+    private volatile boolean running = true;
+
+    /**
+     * @param queueCapacity размер очереди, 0 - без ограничения
+     */
+    public PipelineStage(String name, ExecutorService workers, int workerCount, int queueCapacity, int batchSize, Consumer<List<T>> handler) {
+        this(name, workers, workerCount, queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>(),
+                queueCapacity, batchSize, handler, null);
+    }
+
+    public PipelineStage(String name, ExecutorService workers, int workerCount, BlockingQueue<T> queue, int batchSize, Consumer<List<T>> handler) {
+        this(name, workers, workerCount, queue, 0, batchSize, handler, null);
+    }
+
+    private PipelineStage(String name, ExecutorService workers, int workerCount, BlockingQueue<T> queue, int queueCapacity, int batchSize, Consumer<List<T>> handler, ExecutorService taskExecutor) {
+        this.name = name;
+        this.workers = workers;
+        this.workerCount = workerCount;
+        this.queue = queue;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+        this.taskExecutor = taskExecutor;
+        this.inFlight = taskExecutor == null ? null : new Semaphore(workerCount);
+    }
+
+    public static <T> PipelineStage<T> taskPerItem(String name, ExecutorService taskExecutor, int maxInFlight, BlockingQueue<T> queue, Consumer<List<T>> handler) {
+        ExecutorService dispatcher = Executors.newSingleThreadExecutor(namedThreads(name + "-dispatcher"));
+        return new PipelineStage<>(name, dispatcher, maxInFlight, queue, 0, 1, handler, taskExecutor);
+    }
+
+    public void start() {
+        if (taskExecutor != null) {
+            workers.execute(this::dispatch);
+            return;
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    public void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    /**
+     * @return false, если очередь этапа заполнена
+     */
+    public boolean offer(T item) {
+        return queue.offer(item);
+    }
+
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+        if (taskExecutor != null) {
+            taskExecutor.shutdownNow();
+        }
+    }
+
+    public StageStatistics getStatistics() {
+        long count = processed.sum();
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        double throughput = seconds > 0 ? count / seconds : 0;
+        return new StageStatistics(name, workerCount, busyWorkers.get(), queue.size(), queueCapacity, count, throughput);
+    }
+
+    private void work() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                T item = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    continue;
+                }
+                batch.add(item);
+                queue.drainTo(batch, batchSize - 1);
+                busyWorkers.incrementAndGet();
+                try {
+                    handle(batch);
+                } finally {
+                    busyWorkers.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                T item = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    continue;
+                }
+                inFlight.acquire();
+                busyWorkers.incrementAndGet();
+                try {
+                    taskExecutor.execute(() -> {
+                        try {
+                            handle(List.of(item));
+                        } finally {
+                            busyWorkers.decrementAndGet();
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    busyWorkers.decrementAndGet();
+                    inFlight.release();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void handle(List<T> batch) {
+        try {
+            handler.accept(batch);
+        } catch (RuntimeException e) {
+            log.error("Ошибка на этапе {}", name, e);
+        }
+        processed.add(batch.size());
+    }
+
+    /**
+     * Executor с виртуальным потоком на задачу. Проект собирается под Java 17,
+     * поэтому метод вызывается через reflection: тот же jar работает в режиме
+     * VIRTUAL, если запущен на Java 21+.
+     */
+    public static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Режим загрузки VIRTUAL требует Java 21 или новее", e);
+        }
+    }
+
+    public static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
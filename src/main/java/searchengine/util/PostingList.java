@@ -0,0 +1,383 @@
+package searchengine.util;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Список страниц одной леммы: отсортированные id страниц и rank.
+ * Читатели получают неизменяемый снимок без блокировок, изменения
+ * копятся в буфере и вливаются в новый снимок при следующем чтении
+ * или когда буфер разрастется. Порог буфера растет с длиной списка
+ * (страница на {@link #PAGES_PER_PENDING} страниц списка), чтобы пересборка
+ * длинных списков частых лемм при индексации не шла на каждые 64 изменения.
+ */
+public class PostingList {
+
+    private static final int MIN_PENDING = 64;
+    private static final int PAGES_PER_PENDING = 128;
+    private static final float REMOVED = Float.NaN;
+
+    private volatile Snapshot snapshot;
+    private final TreeMap<Integer, Float> pending = new TreeMap<>();
+    private volatile boolean dirty;
+
+    public PostingList() {
+        this(Snapshot.EMPTY);
+    }
+
+    public PostingList(Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public synchronized void put(int pageId, float rank) {
+        pending.put(pageId, rank);
+        afterChange();
+    }
+
+    public synchronized void remove(int pageId) {
+        pending.put(pageId, REMOVED);
+        afterChange();
+    }
+
+    public Snapshot snapshot() {
+        if (dirty) {
+            synchronized (this) {
+                compact();
+            }
+        }
+        return snapshot;
+    }
+
+    public int size() {
+        return snapshot().size();
+    }
+
+    /**
+     * Подменяет снимок равным ему, например отображенным из файла сегмента,
+     * если с момента записи сегмента список не менялся.
+     */
+    public synchronized boolean replaceSnapshot(Snapshot expected, Snapshot replacement) {
+        if (snapshot != expected || !pending.isEmpty()) {
+            return false;
+        }
+        snapshot = replacement;
+        return true;
+    }
+
+    private void afterChange() {
+        dirty = true;
+        if (pending.size() >= Math.max(MIN_PENDING, snapshot.size() / PAGES_PER_PENDING)) {
+            compact();
+        }
+    }
+
+    /**
+     * Блоки снимка, все id которых меньше первого измененного, переносятся
+     * в новый снимок байтами; распаковываются и сжимаются заново только блок
+     * с первым изменением и следующие. Новые страницы получают растущие id,
+     * поэтому при индексации пересобирается лишь хвост списка.
+     */
+    private void compact() {
+        if (pending.isEmpty()) {
+            dirty = false;
+            return;
+        }
+        Snapshot current = snapshot;
+        int keptBlocks = current.blocksBefore(pending.firstKey());
+        int[] currentIds = new int[current.size() - keptBlocks * Snapshot.BLOCK_SIZE];
+        float[] currentRanks = new float[currentIds.length];
+        current.decode(keptBlocks, currentIds, currentRanks);
+        int[] pageIds = new int[currentIds.length + pending.size()];
+        float[] ranks = new float[pageIds.length];
+        int size = 0;
+        int i = 0;
+        for (Map.Entry<Integer, Float> change : pending.entrySet()) {
+            int pageId = change.getKey();
+            while (i < currentIds.length && currentIds[i] < pageId) {
+                pageIds[size] = currentIds[i];
+                ranks[size++] = currentRanks[i++];
+            }
+            if (i < currentIds.length && currentIds[i] == pageId) {
+                i++;
+            }
+            if (!Float.isNaN(change.getValue())) {
+                pageIds[size] = pageId;
+                ranks[size++] = change.getValue();
+            }
+        }
+        while (i < currentIds.length) {
+            pageIds[size] = currentIds[i];
+            ranks[size++] = currentRanks[i++];
+        }
+        snapshot = current.withTail(keptBlocks, Snapshot.encode(pageIds, ranks, size));
+        pending.clear();
+        dirty = false;
+    }
+
+    /**
+     * Сжатый снимок списка. Id страниц разбиты на блоки по {@link #BLOCK_SIZE}:
+     * первый id блока хранится в таблице пропусков, остальные - разностями
+     * в формате varbyte. Rank квантуется в байт: до 128 точно,
+     * выше - по логарифмической шкале с шагом около 4%.
+     * Данные лежат в буферах: в куче для построенных в памяти снимков
+     * или в отображенном файле сегмента ({@link IndexSegment}).
+     */
+    public static final class Snapshot {
+        public static final int BLOCK_SIZE = 128;
+        public static final Snapshot EMPTY = encode(new int[0], new float[0], 0);
+
+        private final int size;
+        private final ByteBuffer deltas;
+        private final IntBuffer blockFirstIds;
+        private final IntBuffer blockOffsets;
+        private final ByteBuffer ranks;
+
+        Snapshot(int size, ByteBuffer deltas, IntBuffer blockFirstIds, IntBuffer blockOffsets, ByteBuffer ranks) {
+            this.size = size;
+            this.deltas = deltas;
+            this.blockFirstIds = blockFirstIds;
+            this.blockOffsets = blockOffsets;
+            this.ranks = ranks;
+        }
+
+        /**
+         * @param pageIds id страниц по возрастанию
+         */
+        public static Snapshot encode(int[] pageIds, float[] ranks, int size) {
+            int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int[] blockFirstIds = new int[blocks];
+            int[] blockOffsets = new int[blocks];
+            byte[] deltas = new byte[size + 16];
+            byte[] quantizedRanks = new byte[size];
+            int position = 0;
+            for (int i = 0; i < size; i++) {
+                quantizedRanks[i] = quantize(ranks[i]);
+                if (i % BLOCK_SIZE == 0) {
+                    blockFirstIds[i / BLOCK_SIZE] = pageIds[i];
+                    blockOffsets[i / BLOCK_SIZE] = position;
+                    continue;
+                }
+                if (position + 5 > deltas.length) {
+                    deltas = Arrays.copyOf(deltas, deltas.length * 2);
+                }
+                int delta = pageIds[i] - pageIds[i - 1];
+                while ((delta & ~0x7F) != 0) {
+                    deltas[position++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                deltas[position++] = (byte) delta;
+            }
+            return new Snapshot(size, ByteBuffer.wrap(Arrays.copyOf(deltas, position)), IntBuffer.wrap(blockFirstIds),
+                    IntBuffer.wrap(blockOffsets), ByteBuffer.wrap(quantizedRanks));
+        }
+
+        public int size() {
+            return size;
+        }
+
+        int blockCount() {
+            return blockFirstIds.limit();
+        }
+
+        ByteBuffer deltas() {
+            return deltas.duplicate();
+        }
+
+        IntBuffer blockFirstIds() {
+            return blockFirstIds.duplicate();
+        }
+
+        IntBuffer blockOffsets() {
+            return blockOffsets.duplicate();
+        }
+
+        ByteBuffer quantizedRanks() {
+            return ranks.duplicate();
+        }
+
+        public Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /**
+         * @return число первых блоков, все id которых меньше pageId
+         */
+        int blocksBefore(int pageId) {
+            int low = 0;
+            int high = blockFirstIds.limit();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blockFirstIds.get(middle) <= pageId) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return Math.max(0, low - 1);
+        }
+
+        /**
+         * Распаковывает страницы, начиная с блока fromBlock.
+         */
+        void decode(int fromBlock, int[] pageIds, float[] values) {
+            Cursor cursor = cursor();
+            cursor.index = fromBlock * BLOCK_SIZE - 1;
+            for (int i = 0; cursor.next(); i++) {
+                pageIds[i] = cursor.pageId();
+                values[i] = cursor.rank();
+            }
+        }
+
+        /**
+         * @return снимок из первых keptBlocks блоков этого снимка, за которыми идет tail
+         */
+        Snapshot withTail(int keptBlocks, Snapshot tail) {
+            if (keptBlocks == 0) {
+                return tail;
+            }
+            int keptSize = keptBlocks * BLOCK_SIZE;
+            int keptDeltas = blockOffsets.get(keptBlocks);
+            int tailBlocks = tail.blockCount();
+            int[] firstIds = new int[keptBlocks + tailBlocks];
+            int[] offsets = new int[firstIds.length];
+            blockFirstIds.get(0, firstIds, 0, keptBlocks);
+            blockOffsets.get(0, offsets, 0, keptBlocks);
+            for (int block = 0; block < tailBlocks; block++) {
+                firstIds[keptBlocks + block] = tail.blockFirstIds.get(block);
+                offsets[keptBlocks + block] = keptDeltas + tail.blockOffsets.get(block);
+            }
+            byte[] mergedDeltas = new byte[keptDeltas + tail.deltas.limit()];
+            deltas.get(0, mergedDeltas, 0, keptDeltas);
+            tail.deltas.get(0, mergedDeltas, keptDeltas, tail.deltas.limit());
+            byte[] mergedRanks = new byte[keptSize + tail.size];
+            ranks.get(0, mergedRanks, 0, keptSize);
+            tail.ranks.get(0, mergedRanks, keptSize, tail.size);
+            return new Snapshot(keptSize + tail.size, ByteBuffer.wrap(mergedDeltas), IntBuffer.wrap(firstIds),
+                    IntBuffer.wrap(offsets), ByteBuffer.wrap(mergedRanks));
+        }
+
+        public int[] pageIds() {
+            int[] pageIds = new int[size];
+            Cursor cursor = cursor();
+            for (int i = 0; cursor.next(); i++) {
+                pageIds[i] = cursor.pageId();
+            }
+            return pageIds;
+        }
+
+        public float[] ranks() {
+            float[] values = new float[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = dequantize(ranks.get(i));
+            }
+            return values;
+        }
+
+        static byte quantize(float rank) {
+            if (rank <= 128) {
+                return (byte) Math.max(0, Math.round(rank));
+            }
+            double step = 16 * Math.log(rank / 128) / Math.log(2);
+            return (byte) (128 + Math.min(127, Math.round(step)));
+        }
+
+        static float dequantize(byte value) {
+            int quantized = value & 0xFF;
+            if (quantized <= 128) {
+                return quantized;
+            }
+            return (float) (128 * Math.pow(2, (quantized - 128) / 16.0));
+        }
+    }
+
+    /**
+     * Последовательный проход по снимку. {@link #advance(int)} перепрыгивает
+     * целые блоки по таблице пропусков (экспоненциальный, затем двоичный поиск)
+     * и распаковывает только нужный блок.
+     */
+    public static final class Cursor {
+        private final Snapshot snapshot;
+        private int index = -1;
+        private int pageId;
+        private int offset;
+
+        private Cursor(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public boolean next() {
+            if (index + 1 >= snapshot.size) {
+                index = snapshot.size;
+                return false;
+            }
+            index++;
+            if (index % Snapshot.BLOCK_SIZE == 0) {
+                int block = index / Snapshot.BLOCK_SIZE;
+                pageId = snapshot.blockFirstIds.get(block);
+                offset = snapshot.blockOffsets.get(block);
+                return true;
+            }
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = snapshot.deltas.get(offset++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            pageId += delta;
+            return true;
+        }
+
+        /**
+         * Переходит к первой странице с id не меньше target.
+         *
+         * @return false, если такой страницы нет
+         */
+        public boolean advance(int target) {
+            if (index >= snapshot.size) {
+                return false;
+            }
+            if (index >= 0 && pageId >= target) {
+                return true;
+            }
+            int block = Math.max(index, 0) / Snapshot.BLOCK_SIZE;
+            IntBuffer firstIds = snapshot.blockFirstIds;
+            int lastBlock = firstIds.limit() - 1;
+            if (block < lastBlock && firstIds.get(block + 1) <= target) {
+                int bound = 1;
+                while (block + bound <= lastBlock && firstIds.get(block + bound) <= target) {
+                    bound <<= 1;
+                }
+                int low = block + (bound >>> 1);
+                int high = Math.min(block + bound, lastBlock + 1);
+                while (high - low > 1) {
+                    int middle = (low + high) >>> 1;
+                    if (firstIds.get(middle) <= target) {
+                        low = middle;
+                    } else {
+                        high = middle;
+                    }
+                }
+                index = low * Snapshot.BLOCK_SIZE - 1;
+            }
+            while (next()) {
+                if (pageId >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int pageId() {
+            return pageId;
+        }
+
+        public float rank() {
+            return Snapshot.dequantize(snapshot.ranks.get(index));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package searchengine.util;
+
+/**
+ * Прежняя оценка: сумма rank лемм запроса на странице.
+ */
+public class RankSumScorer implements Scorer {
+
+    @Override
+    public float termWeight(int documentFrequency, int documentCount) {
+        return 1;
+    }
+
+    @Override
+    public float score(float termFrequency, float termWeight, int documentLength, float averageDocumentLength) {
+        return termFrequency;
+    }
+}
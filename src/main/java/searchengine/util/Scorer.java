@@ -0,0 +1,22 @@
+package searchengine.util;
+
+/**
+ * Оценка релевантности страницы запросу как суммы оценок по леммам запроса.
+ * Вес леммы считается один раз на запрос, оценка вхождения - на каждую
+ * страницу-кандидат, поэтому методы работают только с примитивами.
+ */
+public interface Scorer {
+
+    /**
+     * @param documentFrequency число страниц сайта с леммой
+     * @param documentCount     число страниц сайта
+     */
+    float termWeight(int documentFrequency, int documentCount);
+
+    /**
+     * @param termFrequency         число вхождений леммы на странице (rank)
+     * @param documentLength        число лемм на странице
+     * @param averageDocumentLength среднее число лемм на странице сайта
+     */
+    float score(float termFrequency, float termWeight, int documentLength, float averageDocumentLength);
+}
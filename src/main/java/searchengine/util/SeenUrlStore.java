@@ -0,0 +1,22 @@
+package searchengine.util;
+
+/**
+ * Множество уже встреченных URL одного сайта.
+ * Реализации получают URL в нормализованном виде.
+ */
+public interface SeenUrlStore {
+
+    /**
+     * @return true, если URL встречен впервые
+     */
+    boolean add(String url);
+
+    boolean contains(String url);
+
+    long size();
+
+    /**
+     * Освобождает память и временные файлы.
+     */
+    void close();
+}
@@ -0,0 +1,96 @@
+package searchengine.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Список действующих сегментов поискового индекса по сайтам.
+ * Для каждого сайта хранится время статуса сайта и число страниц на момент
+ * записи сегмента: при старте они сверяются с базой, и сегмент сайта,
+ * который с тех пор индексировался, не используется.
+ */
+public class SegmentManifest {
+
+    private static final String FILE_NAME = "manifest.properties";
+
+    public record Entry(String segmentFile, long statusTime, int pageCount) {
+
+        /**
+         * @return сегмент записан для этого состояния сайта в базе
+         */
+        public boolean matches(long statusTime, int pageCount) {
+            return this.statusTime == statusTime && this.pageCount == pageCount;
+        }
+    }
+
+    private final Path directory;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    private SegmentManifest(Path directory) {
+        this.directory = directory;
+    }
+
+    public static SegmentManifest load(Path directory) throws IOException {
+        SegmentManifest manifest = new SegmentManifest(directory);
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.endsWith(".segment")) {
+                continue;
+            }
+            String prefix = name.substring(0, name.length() - ".segment".length());
+            int siteId = Integer.parseInt(prefix.substring("site.".length()));
+            manifest.entries.put(siteId, new Entry(properties.getProperty(name),
+                    Long.parseLong(properties.getProperty(prefix + ".status-time")),
+                    Integer.parseInt(properties.getProperty(prefix + ".pages"))));
+        }
+        return manifest;
+    }
+
+    public synchronized Map<Integer, Entry> getEntries() {
+        return Map.copyOf(entries);
+    }
+
+    public synchronized Entry put(int siteId, Entry entry) {
+        return entries.put(siteId, entry);
+    }
+
+    public synchronized Entry remove(int siteId) {
+        return entries.remove(siteId);
+    }
+
+    public Path resolve(String segmentFile) {
+        return directory.resolve(segmentFile);
+    }
+
+    /**
+     * Записывает манифест во временный файл и атомарно подменяет им прежний.
+     */
+    public synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        entries.forEach((siteId, entry) -> {
+            properties.setProperty("site." + siteId + ".segment", entry.segmentFile());
+            properties.setProperty("site." + siteId + ".status-time", Long.toString(entry.statusTime()));
+            properties.setProperty("site." + siteId + ".pages", Integer.toString(entry.pageCount()));
+        });
+        Path tempFile = directory.resolve(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(tempFile, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
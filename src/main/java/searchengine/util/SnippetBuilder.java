@@ -0,0 +1,143 @@
+package searchengine.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Строит сниппет по позициям лемм запроса в тексте страницы.
+ * Списки позиций сливаются, окно фиксированной длины сдвигается по ним
+ * и выбирается окно с наибольшим числом разных лемм запроса
+ * (при равенстве - с наибольшим числом вхождений). Слова подсвечиваются
+ * по смещениям, без регулярных выражений.
+ */
+public final class SnippetBuilder {
+
+    private static final int WINDOW_LENGTH = 240;
+    private static final int CONTEXT_BEFORE = 40;
+
+    private SnippetBuilder() {
+    }
+
+    /**
+     * @param positionLists смещения начала слов каждой леммы запроса, по возрастанию
+     */
+    public static String build(String text, List<int[]> positionLists) {
+        long[] merged = merge(positionLists);
+        if (merged.length == 0) {
+            int end = wordBoundaryBefore(text, Math.min(text.length(), WINDOW_LENGTH), 0);
+            return escape(text, 0, end) + (end < text.length() ? " ..." : "");
+        }
+
+        int[] counts = new int[positionLists.size()];
+        int distinct = 0;
+        int bestDistinct = 0;
+        int bestLeft = 0;
+        int bestRight = 0;
+        int left = 0;
+        for (int right = 0; right < merged.length; right++) {
+            if (counts[lemmaOf(merged[right])]++ == 0) {
+                distinct++;
+            }
+            while (offsetOf(merged[right]) - offsetOf(merged[left]) > WINDOW_LENGTH - CONTEXT_BEFORE) {
+                if (--counts[lemmaOf(merged[left++])] == 0) {
+                    distinct--;
+                }
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && right - left > bestRight - bestLeft)) {
+                bestDistinct = distinct;
+                bestLeft = left;
+                bestRight = right;
+            }
+        }
+
+        int firstOffset = offsetOf(merged[bestLeft]);
+        int start = firstOffset <= CONTEXT_BEFORE ? 0 : wordBoundaryAfter(text, firstOffset - CONTEXT_BEFORE, firstOffset);
+        int lastEnd = tokenEnd(text, offsetOf(merged[bestRight]));
+        int end = Math.min(text.length(), Math.max(start + WINDOW_LENGTH, lastEnd));
+        end = wordBoundaryBefore(text, end, lastEnd);
+
+        StringBuilder snippet = new StringBuilder(end - start + 32);
+        if (start > 0) {
+            snippet.append("... ");
+        }
+        int written = start;
+        int previousOffset = -1;
+        for (long entry : merged) {
+            int offset = offsetOf(entry);
+            if (offset < start || offset == previousOffset || offset < written) {
+                continue;
+            }
+            if (offset >= end) {
+                break;
+            }
+            previousOffset = offset;
+            int tokenEnd = Math.min(tokenEnd(text, offset), end);
+            snippet.append(escape(text, written, offset))
+                    .append("<b>").append(escape(text, offset, tokenEnd)).append("</b>");
+            written = tokenEnd;
+        }
+        snippet.append(escape(text, written, end));
+        if (end < text.length()) {
+            snippet.append(" ...");
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * Сливает списки в один массив: старшие 32 бита - смещение, младшие - номер леммы.
+     */
+    private static long[] merge(List<int[]> positionLists) {
+        int total = 0;
+        for (int[] positions : positionLists) {
+            total += positions.length;
+        }
+        long[] merged = new long[total];
+        int size = 0;
+        for (int lemma = 0; lemma < positionLists.size(); lemma++) {
+            for (int offset : positionLists.get(lemma)) {
+                merged[size++] = ((long) offset << 32) | lemma;
+            }
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static int offsetOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int lemmaOf(long entry) {
+        return (int) entry;
+    }
+
+    private static int tokenEnd(String text, int offset) {
+        return WordTokenizer.wordEnd(text, offset);
+    }
+
+    private static int wordBoundaryAfter(String text, int from, int limit) {
+        int space = text.indexOf(' ', from);
+        return space == -1 || space >= limit ? limit : space + 1;
+    }
+
+    private static int wordBoundaryBefore(String text, int to, int limit) {
+        if (to >= text.length()) {
+            return text.length();
+        }
+        int space = text.lastIndexOf(' ', to);
+        return space <= limit ? to : space;
+    }
+
+    private static String escape(String text, int from, int to) {
+        StringBuilder escaped = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
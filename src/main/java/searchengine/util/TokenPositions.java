@@ -0,0 +1,72 @@
+package searchengine.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Позиции вхождений леммы на странице: смещения начала слов в тексте страницы
+ * по возрастанию. В базе хранятся разностями в формате varbyte
+ * (по 7 бит в байте, старший бит - признак продолжения).
+ */
+public class TokenPositions {
+
+    private int[] offsets = new int[4];
+    private int size;
+
+    public void add(int offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = offset;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(offsets, size);
+    }
+
+    public byte[] encode() {
+        return encode(offsets, size);
+    }
+
+    public static byte[] encode(int[] offsets, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int delta = offsets[i] - previous;
+            previous = offsets[i];
+            while ((delta & ~0x7F) != 0) {
+                out.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.write(delta);
+        }
+        return out.toByteArray();
+    }
+
+    public static int[] decode(byte[] bytes) {
+        if (bytes == null) {
+            return new int[0];
+        }
+        int[] offsets = new int[bytes.length];
+        int size = 0;
+        int previous = 0;
+        int i = 0;
+        while (i < bytes.length) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[i++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += delta;
+            offsets[size++] = previous;
+        }
+        return Arrays.copyOf(offsets, size);
+    }
+}
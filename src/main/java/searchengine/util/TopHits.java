@@ -0,0 +1,127 @@
+package searchengine.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ограниченная куча лучших результатов поиска. Хранит не больше
+ * {@code capacity} пар (страница, релевантность) в примитивных массивах,
+ * в корне лежит худший результат; общее число предложенных результатов
+ * считается отдельно.
+ */
+public class TopHits {
+
+    /**
+     * @param source номер источника результата, например сайта в списке поиска
+     */
+    public record Hit(int source, int pageId, float score) {
+    }
+
+    private static final Comparator<Hit> BEST_FIRST = Comparator.comparing(Hit::score).reversed()
+            .thenComparingInt(Hit::pageId);
+
+    private final int capacity;
+    private float[] scores;
+    private int[] pageIds;
+    private int[] sources;
+    private int size;
+    private long total;
+
+    public TopHits(int capacity) {
+        this.capacity = capacity;
+        int initial = Math.min(capacity, 64);
+        this.scores = new float[initial];
+        this.pageIds = new int[initial];
+        this.sources = new int[initial];
+    }
+
+    public void offer(int source, int pageId, float score) {
+        total++;
+        if (size < capacity) {
+            if (size == scores.length) {
+                int length = (int) Math.min(capacity, scores.length * 2L);
+                scores = Arrays.copyOf(scores, length);
+                pageIds = Arrays.copyOf(pageIds, length);
+                sources = Arrays.copyOf(sources, length);
+            }
+            set(size, source, pageId, score);
+            siftUp(size++);
+        } else if (capacity > 0 && isWorse(0, score, pageId)) {
+            set(0, source, pageId, score);
+            siftDown(0);
+        }
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Добавляет лучшие результаты другой кучи, общее число результатов складывается.
+     */
+    public void merge(TopHits other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.sources[i], other.pageIds[i], other.scores[i]);
+        }
+        total += other.total - other.size;
+    }
+
+    /**
+     * @return результаты от лучшего к худшему
+     */
+    public List<Hit> sorted() {
+        List<Hit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(new Hit(sources[i], pageIds[i], scores[i]));
+        }
+        hits.sort(BEST_FIRST);
+        return hits;
+    }
+
+    private boolean isWorse(int i, float score, int pageId) {
+        return scores[i] < score || (scores[i] == score && pageIds[i] > pageId);
+    }
+
+    private void set(int i, int source, int pageId, float score) {
+        sources[i] = source;
+        pageIds[i] = pageId;
+        scores[i] = score;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isWorse(i, scores[parent], pageIds[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                if (isWorse(child, scores[worst], pageIds[worst])) {
+                    worst = child;
+                }
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        float score = scores[a];
+        int pageId = pageIds[a];
+        int source = sources[a];
+        set(a, sources[b], pageIds[b], scores[b]);
+        set(b, source, pageId, score);
+    }
+}
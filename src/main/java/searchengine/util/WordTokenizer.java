@@ -0,0 +1,57 @@
+package searchengine.util;
+
+/**
+ * Разбивает текст на слова без промежуточных строк: проходит по символам
+ * и отдает границы каждого слова. Слово - непрерывная последовательность
+ * букв одного алфавита, кириллицы или латиницы.
+ */
+public final class WordTokenizer {
+
+    @FunctionalInterface
+    public interface WordConsumer {
+        /**
+         * @param start смещение первого символа слова
+         * @param end смещение за последним символом слова
+         */
+        void accept(int start, int end);
+    }
+
+    private WordTokenizer() {
+    }
+
+    public static void forEachWord(CharSequence text, WordConsumer consumer) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !isWordLetter(text.charAt(i))) {
+                i++;
+            }
+            if (i < length) {
+                int start = i;
+                i = wordEnd(text, start);
+                consumer.accept(start, i);
+            }
+        }
+    }
+
+    /**
+     * @return смещение за последней буквой слова, начинающегося в start
+     */
+    public static int wordEnd(CharSequence text, int start) {
+        int end = start;
+        if (end < text.length() && LemmaFinder.isLatinLetter(text.charAt(end))) {
+            while (end < text.length() && LemmaFinder.isLatinLetter(text.charAt(end))) {
+                end++;
+            }
+        } else {
+            while (end < text.length() && LemmaFinder.isRussianLetter(text.charAt(end))) {
+                end++;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isWordLetter(char c) {
+        return LemmaFinder.isRussianLetter(c) || LemmaFinder.isLatinLetter(c);
+    }
+}
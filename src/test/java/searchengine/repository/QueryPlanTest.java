@@ -0,0 +1,185 @@
+package searchengine.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import searchengine.model.FrontierUrl;
+import searchengine.model.FrontierUrlStatus;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.SiteEntity;
+import searchengine.model.StatusIndexingSite;
+import searchengine.util.TokenPositions;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Каждый метод репозиториев выполняется на PostgreSQL из Testcontainers,
+ * его запросы повторяются под EXPLAIN с теми же параметрами. Последовательное
+ * чтение отключено (enable_seqscan = off), поэтому Seq Scan в плане остается
+ * только там, где запросу не подходит ни один индекс. Таблица site не
+ * проверяется: в ней по строке на сайт из конфигурации.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Import({StatementRecorder.class, PartitionJdbcRepository.class, LemmaIndexJdbcRepository.class,
+        PageContentJdbcRepository.class, FrontierJdbcRepository.class})
+class QueryPlanTest {
+
+    private static final Set<String> CHECKED_TABLES = Set.of("page", "page_content", "lemma", "index", "frontier");
+    private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on \"?(\\w+?)(?:_\\d+|_default)?\"?\\s");
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @Autowired
+    private StatementRecorder recorder;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private SiteRepository siteRepository;
+    @Autowired
+    private PageRepository pageRepository;
+    @Autowired
+    private LemmaRepository lemmaRepository;
+    @Autowired
+    private IndexRepository indexRepository;
+    @Autowired
+    private PartitionJdbcRepository partitionJdbcRepository;
+    @Autowired
+    private LemmaIndexJdbcRepository lemmaIndexJdbcRepository;
+    @Autowired
+    private PageContentJdbcRepository pageContentJdbcRepository;
+    @Autowired
+    private FrontierJdbcRepository frontierJdbcRepository;
+
+    private SiteEntity site;
+    private Page page;
+    private Lemma lemma;
+
+    @BeforeEach
+    void createSite() {
+        site = siteRepository.save(new SiteEntity(0, StatusIndexingSite.INDEXED, Instant.now(), null,
+                "https://example.com", "example"));
+        partitionJdbcRepository.createPartitions(site.getId());
+        page = new Page();
+        page.setId(jdbcTemplate.queryForObject("INSERT INTO page (site_id, path, code) VALUES (?, '/', 200) RETURNING id",
+                Integer.class, site.getId()));
+        page.setSite(site);
+        lemma = new Lemma();
+        lemma.setId(lemmaIndexJdbcRepository.findOrCreateLemmaIds(site.getId(), List.of("поиск")).get("поиск"));
+        lemma.setSite(site);
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+    }
+
+    @Test
+    void repositoryQueriesUseIndexes() {
+        int siteId = site.getId();
+        int pageId = page.getId();
+        Map<String, Runnable> calls = new LinkedHashMap<>();
+        calls.put("PageRepository.existsByPathAndSite", () -> pageRepository.existsByPathAndSite("/", site));
+        calls.put("PageRepository.findFirstByPathAndSite", () -> pageRepository.findFirstByPathAndSite("/", site));
+        calls.put("PageRepository.findPathsBySite", () -> pageRepository.findPathsBySite(site));
+        calls.put("PageRepository.existsByPath", () -> pageRepository.existsByPath("/"));
+        calls.put("PageRepository.countPageBySite", () -> pageRepository.countPageBySite(site));
+        calls.put("PageRepository.deleteByPath", () -> pageRepository.deleteByPath("/missing"));
+        calls.put("LemmaRepository.existsByLemmaAndSite", () -> lemmaRepository.existsByLemmaAndSite("поиск", site));
+        calls.put("LemmaRepository.findByLemmaAndSite", () -> lemmaRepository.findByLemmaAndSite("поиск", site));
+        calls.put("LemmaRepository.countLemmaBySite", () -> lemmaRepository.countLemmaBySite(site));
+        calls.put("LemmaRepository.findByLemma", () -> lemmaRepository.findByLemma("поиск"));
+        calls.put("IndexRepository.findByLemma", () -> indexRepository.findByLemma(lemma));
+        calls.put("IndexRepository.findByPageInAndLemmaIn", () -> indexRepository.findByPageInAndLemmaIn(Set.of(page), Set.of(lemma)));
+        calls.put("LemmaIndexJdbcRepository.findOrCreateLemmaIds", () -> lemmaIndexJdbcRepository.findOrCreateLemmaIds(siteId, List.of("поиск", "индекс")));
+        calls.put("LemmaIndexJdbcRepository.addFrequencies", () -> lemmaIndexJdbcRepository.addFrequencies(siteId, Map.of("поиск", 1)));
+        calls.put("LemmaIndexJdbcRepository.insertIndexes", () -> lemmaIndexJdbcRepository.insertIndexes(siteId, pageId,
+                Map.of("поиск", lemma.getId()), Map.of("поиск", positions())));
+        calls.put("LemmaIndexJdbcRepository.findIndexesByPage", () -> lemmaIndexJdbcRepository.findIndexesByPage(siteId, pageId));
+        calls.put("LemmaIndexJdbcRepository.updateIndexes", () -> lemmaIndexJdbcRepository.updateIndexes(siteId, pageId,
+                Map.of(lemma.getId(), positions())));
+        calls.put("LemmaIndexJdbcRepository.findPositions", () -> lemmaIndexJdbcRepository.findPositions(List.of(pageId), List.of("поиск")));
+        calls.put("LemmaIndexJdbcRepository.forEachPosting", () -> lemmaIndexJdbcRepository.forEachPosting(List.of(siteId),
+                (postingSiteId, postingLemma, postingPageId, rank) -> {
+                }));
+        calls.put("LemmaIndexJdbcRepository.deleteIndexes", () -> lemmaIndexJdbcRepository.deleteIndexes(siteId, pageId, List.of(lemma.getId())));
+        calls.put("PageContentJdbcRepository.save", () -> pageContentJdbcRepository.save(siteId, pageId,
+                "<html></html>".getBytes(StandardCharsets.UTF_8), "UTF-8", "Поиск", "поиск"));
+        calls.put("PageContentJdbcRepository.find", () -> pageContentJdbcRepository.find(siteId, pageId));
+        calls.put("PageContentJdbcRepository.findTexts", () -> pageContentJdbcRepository.findTexts(List.of(pageId)));
+        calls.put("FrontierJdbcRepository.saveAll", () -> frontierJdbcRepository.saveAll(List.of(
+                new FrontierUrl(siteId, "https://example.com/", 0, 0, FrontierUrlStatus.QUEUED))));
+        calls.put("FrontierJdbcRepository.hasUnfinished", () -> frontierJdbcRepository.hasUnfinished(siteId));
+        calls.put("FrontierJdbcRepository.forEachBySite", () -> frontierJdbcRepository.forEachBySite(siteId, url -> {
+        }));
+
+        List<String> failures = new ArrayList<>();
+        calls.forEach((name, call) -> {
+            recorder.start();
+            call.run();
+            List<StatementRecorder.RecordedStatement> statements = recorder.stop();
+            if (statements.isEmpty()) {
+                failures.add(name + ": нет запросов к базе");
+            }
+            for (StatementRecorder.RecordedStatement statement : statements) {
+                List<String> scans = seqScans(statement);
+                if (!scans.isEmpty()) {
+                    failures.add(name + ": " + statement.sql() + "\n    " + String.join("\n    ", scans));
+                }
+            }
+        });
+        assertTrue(failures.isEmpty(), "Запросы читают таблицы целиком:\n" + String.join("\n", failures));
+    }
+
+    private List<String> seqScans(StatementRecorder.RecordedStatement statement) {
+        return jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            List<String> scans = new ArrayList<>();
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+                statement.bind(explain);
+                try (ResultSet plan = explain.executeQuery()) {
+                    while (plan.next()) {
+                        Matcher matcher = SEQ_SCAN.matcher(plan.getString(1));
+                        if (matcher.find() && CHECKED_TABLES.contains(matcher.group(1))) {
+                            scans.add(plan.getString(1).trim());
+                        }
+                    }
+                }
+            }
+            return scans;
+        });
+    }
+
+    private static TokenPositions positions() {
+        TokenPositions positions = new TokenPositions();
+        positions.add(0);
+        return positions;
+    }
+}
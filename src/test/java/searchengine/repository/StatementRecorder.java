@@ -0,0 +1,110 @@
+package searchengine.repository;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Оборачивает DataSource и, пока включена запись, запоминает подготовленные
+ * запросы и Hibernate, и JdbcTemplate. Параметры запоминаются вызовами set*,
+ * чтобы повторить их на EXPLAIN того же запроса.
+ */
+class StatementRecorder implements BeanPostProcessor {
+
+    record RecordedStatement(String sql, Map<Integer, Setter> parameters) {
+
+        void bind(PreparedStatement statement) throws SQLException {
+            for (Setter setter : parameters.values()) {
+                try {
+                    setter.method().invoke(statement, setter.args());
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new SQLException("Не удалось повторить " + setter.method().getName(), e);
+                }
+            }
+        }
+    }
+
+    private record Setter(Method method, Object[] args) {
+    }
+
+    @FunctionalInterface
+    private interface ResultMapper {
+        Object map(Method method, Object[] args, Object result);
+    }
+
+    private final List<RecordedStatement> statements = new ArrayList<>();
+    private boolean recording;
+
+    synchronized void start() {
+        statements.clear();
+        recording = true;
+    }
+
+    synchronized List<RecordedStatement> stop() {
+        recording = false;
+        return List.copyOf(statements);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource dataSource ? proxy(DataSource.class, dataSource, (method, args, result) ->
+                result instanceof Connection connection ? recording(connection) : result) : bean;
+    }
+
+    private Connection recording(Connection connection) {
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement statement) {
+                RecordedStatement recorded = record((String) args[0]);
+                return recorded == null ? statement : recording(statement, recorded);
+            }
+            return result;
+        });
+    }
+
+    private synchronized RecordedStatement record(String sql) {
+        if (!recording) {
+            return null;
+        }
+        RecordedStatement recorded = new RecordedStatement(sql, new LinkedHashMap<>());
+        statements.add(recorded);
+        return recorded;
+    }
+
+    private static PreparedStatement recording(PreparedStatement statement, RecordedStatement recorded) {
+        return proxy(PreparedStatement.class, statement, (method, args, result) -> {
+            if (method.getName().startsWith("set") && args != null && args.length > 1 && args[0] instanceof Integer index) {
+                recorded.parameters().put(index, new Setter(method, args));
+            } else if (method.getName().equals("clearParameters")) {
+                recorded.parameters().clear();
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, ResultMapper mapper) {
+        InvocationHandler handler = (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> {
+                try {
+                    yield mapper.map(method, args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (T) Proxy.newProxyInstance(StatementRecorder.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
@@ -0,0 +1,109 @@
+package searchengine.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndOpenReturnSamePostingsAndNorms() throws IOException {
+        Map<String, PostingList.Snapshot> postings = new LinkedHashMap<>();
+        postings.put("поиск", snapshot(new Random(1), 1000, 5));
+        postings.put("index", snapshot(new Random(2), 3, 100_000));
+        postings.put("ёж", snapshot(new Random(3), PostingList.Snapshot.BLOCK_SIZE, 1));
+        postings.put("пусто", PostingList.Snapshot.EMPTY);
+        int[] normPageIds = {1, 7, 100_003};
+        int[] normLengths = {12, 0, 4_000};
+        Path file = directory.resolve("site-1.seg");
+
+        IndexSegment.write(file, 1, postings, normPageIds, normLengths);
+        IndexSegment segment = IndexSegment.open(file);
+
+        assertEquals(1, segment.getSiteId());
+        assertEquals(postings.keySet(), segment.getPostings().keySet());
+        postings.forEach((lemma, expected) -> {
+            PostingList.Snapshot actual = segment.getPostings().get(lemma);
+            assertEquals(expected.size(), actual.size(), lemma);
+            assertCursorsEqual(expected.cursor(), actual.cursor());
+        });
+        assertArrayEquals(normPageIds, segment.getNormPageIds());
+        assertArrayEquals(normLengths, segment.getNormLengths());
+        assertFalse(Files.exists(directory.resolve("site-1.seg.tmp")));
+    }
+
+    @Test
+    void advanceSkipsBlocksInOpenedSegment() throws IOException {
+        PostingList.Snapshot expected = snapshot(new Random(4), 2_000, 3);
+        Path file = directory.resolve("site-2.seg");
+        IndexSegment.write(file, 2, Map.of("слово", expected), new int[0], new int[0]);
+        PostingList.Snapshot actual = IndexSegment.open(file).getPostings().get("слово");
+
+        int[] pageIds = expected.pageIds();
+        PostingList.Cursor cursor = actual.cursor();
+        for (int i = 0; i < pageIds.length; i += 97) {
+            assertTrue(cursor.advance(pageIds[i]));
+            assertEquals(pageIds[i], cursor.pageId());
+        }
+        assertFalse(cursor.advance(pageIds[pageIds.length - 1] + 1));
+    }
+
+    @Test
+    void rejectsFileWithUnknownMagic() throws IOException {
+        Path file = directory.resolve("site-3.seg");
+        IndexSegment.write(file, 3, Map.of("слово", snapshot(new Random(5), 10, 2)), new int[]{1}, new int[]{1});
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 0xCAFEBABE), 0);
+        }
+
+        assertThrows(IOException.class, () -> IndexSegment.open(file));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path file = directory.resolve("site-4.seg");
+        IndexSegment.write(file, 4, Map.of("слово", snapshot(new Random(6), 500, 2)), new int[]{1}, new int[]{1});
+        for (long size : new long[]{Files.size(file) - 1, Files.size(file) / 2, 10}) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+            }
+
+            assertThrows(IOException.class, () -> IndexSegment.open(file), "size " + size);
+        }
+    }
+
+    private static PostingList.Snapshot snapshot(Random random, int size, int maxGap) {
+        int[] pageIds = new int[size];
+        float[] ranks = new float[size];
+        int pageId = 0;
+        for (int i = 0; i < size; i++) {
+            pageId += 1 + random.nextInt(maxGap);
+            pageIds[i] = pageId;
+            ranks[i] = 0.1f + random.nextFloat() * 10;
+        }
+        return PostingList.Snapshot.encode(pageIds, ranks, size);
+    }
+
+    private static void assertCursorsEqual(PostingList.Cursor expected, PostingList.Cursor actual) {
+        while (expected.next()) {
+            assertTrue(actual.next());
+            assertEquals(expected.pageId(), actual.pageId());
+            assertEquals(expected.rank(), actual.rank());
+        }
+        assertFalse(actual.next());
+    }
+}
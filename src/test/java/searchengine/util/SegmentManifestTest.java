@@ -0,0 +1,60 @@
+package searchengine.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentManifestTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void saveAndLoadReturnSameEntries() throws IOException {
+        SegmentManifest manifest = SegmentManifest.load(directory);
+        manifest.put(1, new SegmentManifest.Entry("site-1-1.seg", 1_700_000_000_000L, 120));
+        manifest.put(2, new SegmentManifest.Entry("site-2-5.seg", 1_700_000_000_500L, 0));
+        manifest.save();
+
+        SegmentManifest loaded = SegmentManifest.load(directory);
+
+        assertEquals(Map.of(
+                1, new SegmentManifest.Entry("site-1-1.seg", 1_700_000_000_000L, 120),
+                2, new SegmentManifest.Entry("site-2-5.seg", 1_700_000_000_500L, 0)), loaded.getEntries());
+        assertEquals(directory.resolve("site-1-1.seg"), loaded.resolve("site-1-1.seg"));
+        assertFalse(Files.exists(directory.resolve("manifest.properties.tmp")));
+    }
+
+    @Test
+    void removedEntryIsNotSaved() throws IOException {
+        SegmentManifest manifest = SegmentManifest.load(directory);
+        manifest.put(1, new SegmentManifest.Entry("site-1-1.seg", 10, 1));
+        manifest.put(2, new SegmentManifest.Entry("site-2-1.seg", 20, 2));
+        manifest.save();
+        manifest.remove(1);
+        manifest.save();
+
+        assertEquals(Map.of(2, new SegmentManifest.Entry("site-2-1.seg", 20, 2)),
+                SegmentManifest.load(directory).getEntries());
+    }
+
+    @Test
+    void loadWithoutFileReturnsEmptyManifest() throws IOException {
+        assertTrue(SegmentManifest.load(directory).getEntries().isEmpty());
+    }
+
+    @Test
+    void entryMatchesOnlySiteStateItWasWrittenFor() {
+        SegmentManifest.Entry entry = new SegmentManifest.Entry("site-1-1.seg", 1_000, 50);
+
+        assertTrue(entry.matches(1_000, 50));
+        assertFalse(entry.matches(2_000, 50), "сайт индексировался после записи сегмента");
+        assertFalse(entry.matches(1_000, 51), "страницы добавлены после записи сегмента");
+    }
+}